@@ -0,0 +1,112 @@
+package org.example.converter;
+
+import org.example.App;
+
+/**
+ * XML payloads used by the benchmarks, selected by name through the JMH {@code payload} parameter
+ */
+public final class BenchmarkPayloads {
+
+    private BenchmarkPayloads() {
+    }
+
+    public static String get(String name) {
+        switch (name) {
+            case "sample":
+                return App.SAMPLE_XML;
+            case "matches-10":
+                return matches(10);
+            case "matches-1k":
+                return matches(1_000);
+            case "matches-100k":
+                return matches(100_000);
+            case "deep":
+                return deep(1_000);
+            case "attributes":
+                return attributes(1_000, 50);
+            case "values":
+                return values(100, 1_000);
+            default:
+                throw new IllegalArgumentException("Unknown payload: " + name);
+        }
+    }
+
+    /**
+     * Screening response with the given number of Match elements
+     */
+    static String matches(int count) {
+        StringBuilder xml = new StringBuilder(count * 120 + 512);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Response>\n<ResultBlock>\n");
+        xml.append("<ErrorWarnings>\n<Errors errorCount=\"0\" />\n<Warnings warningCount=\"0\" />\n</ErrorWarnings>\n");
+        xml.append("<MatchDetails>\n");
+        for (int i = 0; i < count; i++) {
+            xml.append("<Match>\n<Entity>Entity ").append(i).append("</Entity>\n")
+                    .append("<MatchType>").append(i % 3 == 0 ? "Partial" : "Exact").append("</MatchType>\n")
+                    .append("<Score>").append(i % 101).append("</Score>\n</Match>\n");
+        }
+        xml.append("</MatchDetails>\n");
+        appendApi(xml);
+        return xml.append("</ResultBlock>\n</Response>").toString();
+    }
+
+    /**
+     * ResultBlock with a chain of nested elements of the given depth
+     */
+    static String deep(int depth) {
+        StringBuilder xml = new StringBuilder(depth * 24 + 256);
+        xml.append("<Response>\n<ResultBlock>\n");
+        for (int i = 0; i < depth; i++) {
+            xml.append("<Level depth=\"").append(i).append("\">");
+        }
+        xml.append("<Leaf>bottom</Leaf>");
+        for (int i = 0; i < depth; i++) {
+            xml.append("</Level>");
+        }
+        xml.append('\n');
+        appendApi(xml);
+        return xml.append("</ResultBlock>\n</Response>").toString();
+    }
+
+    /**
+     * Repeated elements carrying many attributes each
+     */
+    static String attributes(int elements, int attributesPerElement) {
+        StringBuilder xml = new StringBuilder(elements * attributesPerElement * 16 + 256);
+        xml.append("<Response>\n<ResultBlock>\n<Records>\n");
+        for (int i = 0; i < elements; i++) {
+            xml.append("<Record");
+            for (int a = 0; a < attributesPerElement; a++) {
+                xml.append(" attr").append(a).append("=\"").append(i + a).append('"');
+            }
+            xml.append("><Id>").append(i).append("</Id></Record>\n");
+        }
+        xml.append("</Records>\n");
+        appendApi(xml);
+        return xml.append("</ResultBlock>\n</Response>").toString();
+    }
+
+    /**
+     * Warnings whose Values lists are large
+     */
+    static String values(int warnings, int valuesPerWarning) {
+        StringBuilder xml = new StringBuilder(warnings * valuesPerWarning * 24 + 256);
+        xml.append("<Response>\n<ResultBlock>\n<ErrorWarnings>\n<Warnings warningCount=\"")
+                .append(warnings).append("\">\n");
+        for (int w = 0; w < warnings; w++) {
+            xml.append("<Warning>\n<Number>").append(102000 + w).append("</Number>\n")
+                    .append("<Message>Mismatch ").append(w).append("</Message>\n<Values>\n");
+            for (int v = 0; v < valuesPerWarning; v++) {
+                xml.append("<Value>value-").append(v).append("</Value>\n");
+            }
+            xml.append("</Values>\n</Warning>\n");
+        }
+        xml.append("</Warnings>\n</ErrorWarnings>\n");
+        appendApi(xml);
+        return xml.append("</ResultBlock>\n</Response>").toString();
+    }
+
+    private static void appendApi(StringBuilder xml) {
+        xml.append("<API>\n<RetStatus>SUCCESS</RetStatus>\n<ErrorMessage />\n<SysErrorCode />\n")
+                .append("<SysErrorMessage />\n</API>\n");
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.converter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end conversion through the public converter API, for both engines
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"sample", "matches-10", "matches-1k", "matches-100k", "deep", "attributes", "values"})
+    public String payload;
+
+    @Param({"streaming", "dom"})
+    public String engine;
+
+    private XmlToJsonConverter converter;
+    private String xml;
+    private byte[] xmlBytes;
+
+    @Setup
+    public void setUp() {
+        Properties config = new Properties();
+        config.setProperty("converter.engine", engine);
+        config.setProperty("fixed.second.match.score", "40");
+        converter = new XmlToJsonConverter(config);
+        xml = BenchmarkPayloads.get(payload);
+        xmlBytes = xml.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String convertString() throws Exception {
+        return converter.convertXmlToJson(xml);
+    }
+
+    @Benchmark
+    public void convertStream() throws Exception {
+        converter.convertXmlToJson(new ByteArrayInputStream(xmlBytes), OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.converter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming conversion cost per output format, compact and pretty-printed JSON included
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputFormatBenchmark {
+
+    @Param({"matches-1k", "attributes"})
+    public String payload;
+
+    @Param({"json", "json-pretty", "smile", "cbor"})
+    public String format;
+
+    private XmlToJsonConverter converter;
+    private OutputFormat outputFormat;
+    private byte[] xmlBytes;
+
+    @Setup
+    public void setUp() {
+        Properties config = new Properties();
+        config.setProperty("output.pretty", String.valueOf(format.endsWith("-pretty")));
+        converter = new XmlToJsonConverter(config);
+        outputFormat = OutputFormat.of(format.replace("-pretty", ""));
+        xmlBytes = BenchmarkPayloads.get(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void convertStream() throws Exception {
+        converter.convertXml(new ByteArrayInputStream(xmlBytes), null, OutputStream.nullOutputStream(), outputFormat);
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Individual phases of the DOM engine, each measured on input prepared by the previous phases
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhaseBenchmark {
+
+    @Param({"sample", "matches-10", "matches-1k", "matches-100k", "deep", "attributes", "values"})
+    public String payload;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter prettyWriter = objectMapper.writerWithDefaultPrettyPrinter();
+
+    private XmlToJsonConverter converter;
+    private String xml;
+    private Document document;
+    private ObjectNode rootNode;
+    private ObjectNode responseNode;
+    private MatchScoreAggregator scores;
+
+    @Setup
+    public void setUp() throws Exception {
+        Properties config = new Properties();
+        config.setProperty("converter.engine", "dom");
+        config.setProperty("fixed.second.match.score", "40");
+        converter = new XmlToJsonConverter(config);
+        xml = BenchmarkPayloads.get(payload);
+
+        document = converter.parseXml(new InputSource(new StringReader(xml)));
+        rootNode = objectMapper.createObjectNode();
+        responseNode = rootNode.putObject(document.getDocumentElement().getNodeName());
+        scores = converter.newScoreAggregator();
+        converter.convertElementToJson(document.getDocumentElement(), responseNode, scores);
+    }
+
+    @Benchmark
+    public Document parse() throws Exception {
+        return converter.parseXml(new InputSource(new StringReader(xml)));
+    }
+
+    /**
+     * Tree conversion, including the Match score aggregation done during the same walk
+     */
+    @Benchmark
+    public ObjectNode convertElementToJson() throws Exception {
+        ObjectNode node = objectMapper.createObjectNode();
+        converter.convertElementToJson(document.getDocumentElement(), node, converter.newScoreAggregator());
+        return node;
+    }
+
+    @Benchmark
+    public ObjectNode addMatchSummaryField() {
+        // Idempotent on the prepared tree: every call fills the MatchSummary slot reserved in ResultBlock
+        converter.addMatchSummaryField(responseNode, scores);
+        return responseNode;
+    }
+
+    @Benchmark
+    public String serialize() throws Exception {
+        return prettyWriter.writeValueAsString(rootNode);
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.converter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion cost with and without a projection leaving out most of the document
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    @Param({"matches-1k", "values"})
+    public String payload;
+
+    @Param({"streaming", "dom"})
+    public String engine;
+
+    @Param({"none", "api-only", "no-match-details"})
+    public String projection;
+
+    private XmlToJsonConverter converter;
+    private Projection selected;
+    private byte[] xmlBytes;
+
+    @Setup
+    public void setUp() {
+        Properties config = new Properties();
+        config.setProperty("converter.engine", engine);
+        converter = new XmlToJsonConverter(config);
+        switch (projection) {
+            case "api-only":
+                selected = Projection.parse("ResultBlock/API/RetStatus", null);
+                break;
+            case "no-match-details":
+                selected = Projection.parse(null, "ResultBlock/MatchDetails,ResultBlock/ErrorWarnings");
+                break;
+            default:
+                selected = Projection.ALL;
+                break;
+        }
+        xmlBytes = BenchmarkPayloads.get(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void convertStream() throws Exception {
+        converter.convertXml(new ByteArrayInputStream(xmlBytes), null, OutputStream.nullOutputStream(),
+                OutputFormat.JSON, selected);
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.service;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import org.example.App;
+import org.example.converter.XmlToJsonConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of service-level logging under concurrent load: a synchronous file appender against the
+ * async appender from logback.xml, logging every success or a 1% sample, for valid input and for
+ * input failing with a logged stack trace
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LoggingBenchmark {
+
+    @Param({"sync", "async"})
+    public String appender;
+
+    @Param({"1.0", "0.01"})
+    public String sampleRate;
+
+    @Param({"valid", "invalid"})
+    public String input;
+
+    private LoggerContext context;
+    private File logFile;
+    private XmlToJsonService service;
+    private String xml;
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = File.createTempFile("logging-benchmark", ".log");
+        context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} %X{correlationId} - %msg%n");
+        encoder.start();
+
+        FileAppender<ILoggingEvent> file = new FileAppender<>();
+        file.setContext(context);
+        file.setFile(logFile.getAbsolutePath());
+        file.setEncoder(encoder);
+        file.start();
+
+        Appender<ILoggingEvent> root = file;
+        if ("async".equals(appender)) {
+            // Same settings as logback.xml
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.setDiscardingThreshold(1638);
+            async.setNeverBlock(true);
+            async.addAppender(file);
+            async.start();
+            root = async;
+        }
+        ch.qos.logback.classic.Logger rootLogger = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        rootLogger.setLevel(Level.INFO);
+        rootLogger.addAppender(root);
+
+        Properties config = new Properties();
+        config.setProperty("logging.success.sample.rate", sampleRate);
+        service = new XmlToJsonService(new XmlToJsonConverter(config));
+        xml = "valid".equals(input) ? App.SAMPLE_XML : App.SAMPLE_XML.substring(0, App.SAMPLE_XML.length() / 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.close();
+        context.stop();
+        logFile.delete();
+    }
+
+    @Benchmark
+    public Object processXml() {
+        try {
+            return service.processXml(xml);
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
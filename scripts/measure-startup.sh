@@ -0,0 +1,48 @@
+#!/usr/bin/env bash
+# Wall-clock time of one convert run of the sample document: plain JVM, JVM with the AppCDS
+# archive (mvn -Pappcds package) and native image (mvn -Pnative package), whichever are built.
+#
+# Usage: scripts/measure-startup.sh [runs] [input.xml]
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+RUNS=${1:-20}
+INPUT=${2:-src/cds/training/response.xml}
+# Absolute, the AppCDS archive only applies to the class path it was dumped with
+JAR=$(ls "$PWD"/target/*-cli.jar 2>/dev/null | head -n 1 || true)
+ARCHIVE=$PWD/target/app-cds.jsa
+NATIVE=$PWD/target/xml-json-converter
+
+if [[ -z "$JAR" ]]; then
+    echo "No CLI jar in target, run mvn package first" >&2
+    exit 1
+fi
+
+measure() {
+    local label=$1
+    shift
+    # Warm the page cache and fail early when the command does not work
+    "$@" convert "$INPUT" > /dev/null
+    local start end
+    start=$(date +%s%N)
+    for ((i = 0; i < RUNS; i++)); do
+        "$@" convert "$INPUT" > /dev/null
+    done
+    end=$(date +%s%N)
+    printf '%-16s %6d ms per run\n' "$label" $(( (end - start) / RUNS / 1000000 ))
+}
+
+measure "jvm" java -jar "$JAR"
+# A short run gains nothing from C2 or a concurrent collector
+measure "jvm-tuned" java -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -jar "$JAR"
+if [[ -f "$ARCHIVE" ]]; then
+    measure "appcds" java -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR"
+    measure "appcds-tuned" java -XX:SharedArchiveFile="$ARCHIVE" -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -jar "$JAR"
+else
+    echo "appcds           skipped, run mvn -Pappcds package"
+fi
+if [[ -x "$NATIVE" ]]; then
+    measure "native" "$NATIVE"
+else
+    echo "native           skipped, run mvn -Pnative package with GraalVM"
+fi
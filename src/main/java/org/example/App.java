@@ -1,65 +1,128 @@
 package org.example;
+import org.example.cli.ConvertCommand;
+import org.example.converter.ConverterRegistry;
+import org.example.converter.XmlToJsonConverter;
+import org.example.server.ConversionServer;
 import org.example.service.XmlToJsonService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
 public class App 
 {
     private static final Logger logger = LoggerFactory.getLogger(App.class);
 
+    /** Sample screening response used by the demo run and the benchmarks */
+    public static final String SAMPLE_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<Response>\n" +
+            "<ResultBlock>\n" +
+            "<ErrorWarnings>\n" +
+            "<Errors errorCount=\"0\" />\n" +
+            "<Warnings warningCount=\"1\">\n" +
+            "<Warning>\n" +
+            "<Number>102001</Number>\n" +
+            "<Message>Minor mismatch in address</Message>\n" +
+            "<Values>\n" +
+            "<Value>Bellandur</Value>\n" +
+            "<Value>Bangalore</Value>\n" +
+            "</Values>\n" +
+            "</Warning>\n" +
+            "</Warnings>\n" +
+            "</ErrorWarnings>\n" +
+            "<MatchDetails>\n" +
+            "<Match>\n" +
+            "<Entity>John</Entity>\n" +
+            "<MatchType>Exact</MatchType>\n" +
+            "<Score>35</Score>\n" +
+            "</Match>\n" +
+            "<Match>\n" +
+            "<Entity>Doe</Entity>\n" +
+            "<MatchType>Exact</MatchType>\n" +
+            "<Score>50</Score>\n" +
+            "</Match>\n" +
+            "</MatchDetails>\n" +
+            "<API>\n" +
+            "<RetStatus>SUCCESS</RetStatus>\n" +
+            "<ErrorMessage />\n" +
+            "<SysErrorCode />\n" +
+            "<SysErrorMessage />\n" +
+            "</API>\n" +
+            "</ResultBlock>\n" +
+            "</Response>";
+
     public static void main(String[] args) {
-        logger.info("Starting XML to JSON conversion application");
+        if (args.length > 0 && "ndjson".equals(args[0])) {
+            System.exit(convertFileToNdjson(args));
+        }
+        if (args.length > 0 && "convert".equals(args[0])) {
+            System.exit(ConvertCommand.run(Arrays.asList(args).subList(1, args.length)));
+        }
+        if (args.length > 0 && "server".equals(args[0])) {
+            runServer(args);
+            return;
+        }
 
-        // Sample XML input
-        String xmlInput = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
-                "<Response>\n" +
-                "<ResultBlock>\n" +
-                "<ErrorWarnings>\n" +
-                "<Errors errorCount=\"0\" />\n" +
-                "<Warnings warningCount=\"1\">\n" +
-                "<Warning>\n" +
-                "<Number>102001</Number>\n" +
-                "<Message>Minor mismatch in address</Message>\n" +
-                "<Values>\n" +
-                "<Value>Bellandur</Value>\n" +
-                "<Value>Bangalore</Value>\n" +
-                "</Values>\n" +
-                "</Warning>\n" +
-                "</Warnings>\n" +
-                "</ErrorWarnings>\n" +
-                "<MatchDetails>\n" +
-                "<Match>\n" +
-                "<Entity>John</Entity>\n" +
-                "<MatchType>Exact</MatchType>\n" +
-                "<Score>35</Score>\n" +
-                "</Match>\n" +
-                "<Match>\n" +
-                "<Entity>Doe</Entity>\n" +
-                "<MatchType>Exact</MatchType>\n" +
-                "<Score>50</Score>\n" +
-                "</Match>\n" +
-                "</MatchDetails>\n" +
-                "<API>\n" +
-                "<RetStatus>SUCCESS</RetStatus>\n" +
-                "<ErrorMessage />\n" +
-                "<SysErrorCode />\n" +
-                "<SysErrorMessage />\n" +
-                "</API>\n" +
-                "</ResultBlock>\n" +
-                "</Response>";
+        logger.info("Starting XML to JSON conversion application");
 
         XmlToJsonService service = new XmlToJsonService();
 
         try {
-            String jsonOutput = service.processXml(xmlInput);
+            String jsonOutput = service.processXml(SAMPLE_XML);
             logger.info("Conversion completed successfully");
             System.out.println("\n--- Converted JSON Output ---");
             System.out.println(jsonOutput);
         } catch (Exception e) {
-            logger.error("Error in XML to JSON conversion", e);
+            // The service has logged the failure
             System.err.println("Error converting XML to JSON: " + e.getMessage());
         }
 
     }
+
+    /**
+     * Runs the ndjson command, converting a bulk export file to NDJSON
+     */
+    private static int convertFileToNdjson(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("Usage: ndjson <input.xml> <output.ndjson> [record element]");
+            return 2;
+        }
+        try (XmlToJsonService service = new XmlToJsonService()) {
+            Path input = Paths.get(args[1]);
+            Path output = Paths.get(args[2]);
+            long records = args.length == 4
+                    ? service.processFileToNdjson(input, output, args[3])
+                    : service.processFileToNdjson(input, output);
+            System.out.println("Wrote " + records + " records to " + output);
+            return 0;
+        } catch (Exception e) {
+            // The service has logged the failure
+            System.err.println("Error converting XML to NDJSON: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Runs the server command, serving conversions over HTTP until the JVM is stopped
+     */
+    private static void runServer(String[] args) {
+        try {
+            // Profile files in converter.profiles.dir are picked up while the server runs
+            ConverterRegistry registry = ConverterRegistry.fromConfig(
+                    ConversionServer.serverConfig(XmlToJsonConverter.loadProperties()));
+            registry.startWatching();
+            ConversionServer server = new ConversionServer(registry, args.length > 1
+                    ? Integer.parseInt(args[1])
+                    : Integer.parseInt(registry.getDefaultConverter().getConfigProperty("server.port", "8080")));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close, "server-shutdown"));
+            server.start();
+        } catch (Exception e) {
+            logger.error("Failed to start conversion server", e);
+            System.err.println("Error starting conversion server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 }
@@ -0,0 +1,304 @@
+package org.example.cli;
+
+import org.example.converter.OutputFormat;
+import org.example.converter.XmlToJsonConverter;
+import org.example.service.XmlToJsonService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The convert command, for pipeline steps that convert a batch of files and exit.
+ *
+ * <pre>
+ * convert [-o output] [-f format] [-j threads] [input...]
+ * </pre>
+ * Inputs are XML files, directories, whose {@code *.xml} files are converted recursively, or
+ * {@code -} for stdin, which is also the input when none is given. A single file or stdin is
+ * written to the output file, or to stdout without {@code -o}. Otherwise each file gets its own
+ * output, in the output directory (keeping the layout below an input directory) or next to the
+ * input without {@code -o}, with the extension of the format; inputs that would overwrite
+ * themselves or share an output are refused. Files are converted in parallel on
+ * {@code -j} threads, all processors by default; a failed file is reported and the others go on.
+ * Exits with 0 when every input was converted, 1 when some failed and 2 on usage errors.
+ */
+public final class ConvertCommand {
+    private static final String USAGE =
+            "Usage: convert [-o output] [-f json|smile|cbor|messagepack] [-j threads] [input.xml|directory|-]...";
+    private static final String STDIN = "-";
+
+    private final List<String> inputs = new ArrayList<>();
+    private Path output;
+    private OutputFormat format;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final PrintStream out;
+    private final PrintStream err;
+
+    private ConvertCommand(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Runs the command with the arguments following {@code convert} and returns the exit code
+     */
+    public static int run(List<String> args) {
+        ConvertCommand command = new ConvertCommand(System.out, System.err);
+        try {
+            command.parse(args);
+        } catch (IllegalArgumentException e) {
+            command.err.println(e.getMessage());
+            command.err.println(USAGE);
+            return 2;
+        }
+        return command.convert();
+    }
+
+    private void parse(List<String> args) {
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            switch (arg) {
+                case "-o":
+                case "--output":
+                    output = Paths.get(value(args, ++i, arg));
+                    break;
+                case "-f":
+                case "--format":
+                    format = OutputFormat.of(value(args, ++i, arg));
+                    break;
+                case "-j":
+                case "--threads":
+                    try {
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid thread count: " + args.get(i));
+                    }
+                    if (threads < 1) {
+                        throw new IllegalArgumentException("Invalid thread count: " + threads);
+                    }
+                    break;
+                case "-h":
+                case "--help":
+                    throw new IllegalArgumentException("Converts XML files, directories of them or stdin to JSON");
+                default:
+                    if (arg.startsWith("-") && !STDIN.equals(arg)) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(arg);
+                    break;
+            }
+        }
+        if (inputs.isEmpty()) {
+            inputs.add(STDIN);
+        }
+        if (inputs.contains(STDIN) && inputs.size() > 1) {
+            throw new IllegalArgumentException("stdin cannot be converted together with other inputs");
+        }
+    }
+
+    private static String value(List<String> args, int index, String option) {
+        if (index >= args.size()) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args.get(index);
+    }
+
+    private int convert() {
+        Properties config = XmlToJsonConverter.loadProperties();
+        // Nobody reads the JMX metrics of a process that exits after one batch, registering them costs startup
+        config.setProperty("metrics.enabled", "false");
+        XmlToJsonConverter converter = new XmlToJsonConverter(config);
+        OutputFormat outputFormat = format != null ? format : converter.getOutputFormat();
+        int bufferSize = Integer.parseInt(converter.getConfigProperty("converter.buffer.size", "8192"));
+
+        List<Job> jobs;
+        try {
+            jobs = jobs(extension(outputFormat));
+        } catch (IOException e) {
+            err.println("Error reading inputs: " + e.getMessage());
+            return 2;
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jobs.size())));
+        try (XmlToJsonService service = new XmlToJsonService(converter, workers)) {
+            AtomicInteger failures = new AtomicInteger();
+            List<Future<?>> running = new ArrayList<>(jobs.size());
+            for (Job job : jobs) {
+                running.add(workers.submit(() -> {
+                    try {
+                        job.run(service, outputFormat, bufferSize);
+                    } catch (IOException | RuntimeException e) {
+                        failures.incrementAndGet();
+                        err.println("Failed to convert " + job.name() + ": " + e.getMessage());
+                    }
+                }));
+            }
+            for (Future<?> job : running) {
+                job.get();
+            }
+            if (jobs.size() > 1 || failures.get() > 0) {
+                err.println("Converted " + (jobs.size() - failures.get()) + " of " + jobs.size() + " files");
+            }
+            return failures.get() == 0 ? 0 : 1;
+        } catch (Exception e) {
+            err.println("Error converting XML: " + e.getMessage());
+            return 1;
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * One conversion per input file, with the output decided up front
+     */
+    private List<Job> jobs(String extension) throws IOException {
+        if (inputs.size() == 1 && STDIN.equals(inputs.get(0))) {
+            return List.of(new Job(null, output));
+        }
+        if (inputs.size() == 1 && Files.isRegularFile(Paths.get(inputs.get(0)))
+                && (output == null || !Files.isDirectory(output))) {
+            // A single file goes to the output file or stdout
+            Job job = new Job(Paths.get(inputs.get(0)), output);
+            checkTargets(List.of(job));
+            return List.of(job);
+        }
+        if (output != null && Files.isRegularFile(output)) {
+            throw new IllegalArgumentException("Output must be a directory for several inputs: " + output);
+        }
+
+        List<Job> jobs = new ArrayList<>();
+        for (String input : inputs) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path)) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files = walk.filter(file -> Files.isRegularFile(file)
+                                    && file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".xml"))
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    Path target = output == null ? file : output.resolve(path.relativize(file).toString());
+                    jobs.add(new Job(file, withExtension(target, extension)));
+                }
+            } else if (Files.isRegularFile(path)) {
+                Path target = output == null ? path : output.resolve(path.getFileName().toString());
+                jobs.add(new Job(path, withExtension(target, extension)));
+            } else {
+                throw new IllegalArgumentException("No such file or directory: " + input);
+            }
+        }
+        checkTargets(jobs);
+        return jobs;
+    }
+
+    /**
+     * Rejects jobs that would truncate their own input before reading it, or write to the same
+     * output as another job running in parallel
+     */
+    private static void checkTargets(List<Job> jobs) throws IOException {
+        Map<Path, Job> targets = new HashMap<>();
+        for (Job job : jobs) {
+            if (job.target == null) {
+                continue;
+            }
+            Path target = job.target.toAbsolutePath().normalize();
+            if (target.equals(job.input.toAbsolutePath().normalize())
+                    || Files.exists(target) && Files.isSameFile(target, job.input)) {
+                throw new IllegalArgumentException("Output would overwrite its input: " + job.input);
+            }
+            Job other = targets.putIfAbsent(target, job);
+            if (other != null) {
+                throw new IllegalArgumentException(
+                        "Inputs " + other.input + " and " + job.input + " have the same output " + job.target);
+            }
+        }
+    }
+
+    private static Path withExtension(Path file, String extension) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return file.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + extension);
+    }
+
+    private static String extension(OutputFormat format) {
+        return format == OutputFormat.MESSAGEPACK ? ".msgpack" : "." + format.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Conversion of one input, a file or stdin when null, to an output file, or stdout when null
+     */
+    private final class Job {
+        private final Path input;
+        private final Path target;
+
+        Job(Path input, Path target) {
+            this.input = input;
+            this.target = target;
+        }
+
+        String name() {
+            return input == null ? "stdin" : input.toString();
+        }
+
+        void run(XmlToJsonService service, OutputFormat format, int bufferSize) throws IOException {
+            if (target == null) {
+                // stdout stays open for the other outputs of the process
+                OutputStream stdout = new BufferedOutputStream(out, bufferSize);
+                convert(service, format, bufferSize, stdout);
+                stdout.flush();
+                if (!format.isBinary()) {
+                    out.println();
+                }
+                return;
+            }
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            boolean converted = false;
+            try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(target), bufferSize)) {
+                convert(service, format, bufferSize, file);
+                converted = true;
+            } finally {
+                if (!converted) {
+                    // No partial output is left behind for the next pipeline step
+                    Files.deleteIfExists(target);
+                }
+            }
+        }
+
+        private void convert(XmlToJsonService service, OutputFormat format, int bufferSize, OutputStream target)
+                throws IOException {
+            if (input == null) {
+                service.processXml(new BufferedInputStream(System.in, bufferSize), null, target, format);
+                return;
+            }
+            try (InputStream xml = new BufferedInputStream(Files.newInputStream(input), bufferSize)) {
+                service.processXml(xml, null, target, format);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.converter;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.Properties;
+
+/**
+ * Size limits for one document, from the limits.* configuration; 0 means no limit.
+ *
+ * The streaming engine checks them on every parser event, so a document crossing one fails as
+ * soon as it does, with only the open elements in memory. The DOM engine checks the byte limit
+ * while parsing and the others while it walks the parsed tree, before the tree is written. Bytes
+ * are counted on byte input and characters on String input.
+ */
+public final class ConversionLimits {
+    private final int maxDepth;
+    private final long maxElements;
+    private final long maxBytes;
+    private final long maxTextLength;
+    private final int maxAttributes;
+
+    private ConversionLimits(int maxDepth, long maxElements, long maxBytes, long maxTextLength, int maxAttributes) {
+        this.maxDepth = maxDepth;
+        this.maxElements = maxElements;
+        this.maxBytes = maxBytes;
+        this.maxTextLength = maxTextLength;
+        this.maxAttributes = maxAttributes;
+    }
+
+    static ConversionLimits fromConfig(Properties config) {
+        return new ConversionLimits(
+                Integer.parseInt(config.getProperty("limits.max.depth", "0").trim()),
+                Long.parseLong(config.getProperty("limits.max.elements", "0").trim()),
+                Long.parseLong(config.getProperty("limits.max.bytes", "0").trim()),
+                Long.parseLong(config.getProperty("limits.max.text.length", "0").trim()),
+                Integer.parseInt(config.getProperty("limits.max.attributes", "0").trim()));
+    }
+
+    /**
+     * Checks an element as it starts, at the given depth (1 for the root), as the given element of
+     * the document and with the given number of attributes and namespace declarations
+     */
+    void checkElement(int depth, long elements, int attributes) throws XmlToJsonConverter.LimitExceededException {
+        if (maxDepth > 0 && depth > maxDepth) {
+            throw new XmlToJsonConverter.LimitExceededException("depth", maxDepth);
+        }
+        if (maxElements > 0 && elements > maxElements) {
+            throw new XmlToJsonConverter.LimitExceededException("elements", maxElements);
+        }
+        if (maxAttributes > 0 && attributes > maxAttributes) {
+            throw new XmlToJsonConverter.LimitExceededException("attributes", maxAttributes);
+        }
+    }
+
+    /**
+     * Checks the length of the text read so far between two tags
+     */
+    void checkText(long length) throws XmlToJsonConverter.LimitExceededException {
+        if (maxTextLength > 0 && length > maxTextLength) {
+            throw new XmlToJsonConverter.LimitExceededException("text.length", maxTextLength);
+        }
+    }
+
+    /**
+     * Checks the size of String input up front
+     */
+    void checkChars(long length) throws XmlToJsonConverter.LimitExceededException {
+        if (maxBytes > 0 && length > maxBytes) {
+            throw new XmlToJsonConverter.LimitExceededException("bytes", maxBytes);
+        }
+    }
+
+    /**
+     * Checks of one parsed document, fed by the DOM engine as it walks the tree
+     */
+    TreeCheck newTreeCheck() {
+        return new TreeCheck();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getMaxElements() {
+        return maxElements;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxTextLength() {
+        return maxTextLength;
+    }
+
+    public int getMaxAttributes() {
+        return maxAttributes;
+    }
+
+    /**
+     * Limits of one parsed document, counting its elements as the DOM engine reaches them
+     */
+    final class TreeCheck {
+        private final boolean walked = maxDepth > 0 || maxElements > 0 || maxTextLength > 0 || maxAttributes > 0;
+        private long elements;
+
+        private TreeCheck() {
+        }
+
+        /**
+         * Checks an element the walk reached, at the given depth (1 for the root)
+         */
+        void element(Element element, int depth) throws XmlToJsonConverter.LimitExceededException {
+            NamedNodeMap attributes = element.getAttributes();
+            checkElement(depth, ++elements, attributes == null ? 0 : attributes.getLength());
+        }
+
+        /**
+         * Checks the length of the text read so far between two tags
+         */
+        void text(long length) throws XmlToJsonConverter.LimitExceededException {
+            checkText(length);
+        }
+
+        /**
+         * Checks everything below an element at the given depth that the walk converts as a whole,
+         * without recursion
+         */
+        void descendants(Element element, int depth) throws XmlToJsonConverter.LimitExceededException {
+            Node node = element.getFirstChild();
+            if (!walked || node == null) {
+                return;
+            }
+            int nodeDepth = depth + 1;
+            long textLength = 0;
+            while (true) {
+                short type = node.getNodeType();
+                if (type == Node.ELEMENT_NODE) {
+                    element((Element) node, nodeDepth);
+                    textLength = 0;
+                    if (node.getFirstChild() != null) {
+                        node = node.getFirstChild();
+                        nodeDepth++;
+                        continue;
+                    }
+                } else if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                    textLength += node.getNodeValue().length();
+                    checkText(textLength);
+                }
+
+                // Next sibling of the node or of the nearest ancestor below the element; every end
+                // tag passed on the way ends a run of text
+                while (node.getNextSibling() == null) {
+                    node = node.getParentNode();
+                    nodeDepth--;
+                    if (node == element) {
+                        return;
+                    }
+                    textLength = 0;
+                }
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    textLength = 0;
+                }
+                node = node.getNextSibling();
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.example.converter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Immutable conversion rules compiled once from the converter configuration.
+ *
+ * Element-specific behaviour is declared with {@code element.rule.<Element>=<handler>[:<child>]}:
+ * <ul>
+ *   <li>{@code match-list:<child>} wraps the {@code <child>} elements found below the element into an
+ *       array of {@code {"<child>": {...}}} objects, applying {@code field.mapping.<Element>.<field>}
+ *       (the MatchDetails handling)</li>
+ *   <li>{@code value-list:<child>} collapses the {@code <child>} elements below it into a single value
+ *       or an array of values (the Values handling)</li>
+ *   <li>{@code array} always emits the element as an array, even when it occurs once</li>
+ *   <li>{@code skip} leaves the element out of the output</li>
+ *   <li>{@code generic} removes a built-in rule</li>
+ * </ul>
+ * Leaves are written as JSON strings unless a type is declared with {@code leaf.type.<Element>} or,
+ * for one parent only, {@code leaf.type.<Parent>/<Element>}: {@code integer}, {@code decimal},
+ * {@code number} (either of the two), {@code boolean} or {@code string}. A value that does not
+ * parse as its declared type stays a string.
+ *
+ * Lookups are keyed by element name; XML parsers hand out names from a symbol table, so the
+ * String hash is computed once per distinct name and the hot loop does no concatenation or
+ * Properties access.
+ */
+final class ConversionPlan {
+    private static final String RULE_PREFIX = "element.rule.";
+    private static final String FIELD_MAPPING_PREFIX = "field.mapping.";
+    private static final String LEAF_TYPE_PREFIX = "leaf.type.";
+    // Parent key of leaf types declared without a parent
+    private static final String ANY_PARENT = "";
+    private static final String SCORE_ELEMENT = "Score";
+
+    enum Handler {
+        GENERIC, MATCH_LIST, VALUE_LIST, ARRAY, SKIP
+    }
+
+    enum LeafType {
+        STRING, INTEGER, DECIMAL, NUMBER, BOOLEAN
+    }
+
+    /**
+     * Precomputed handling of one element name
+     */
+    static final class ElementRule {
+        static final ElementRule GENERIC = new ElementRule(Handler.GENERIC, null, Collections.emptyMap());
+
+        final Handler handler;
+        // Element collected by MATCH_LIST and VALUE_LIST rules
+        final String childName;
+        private final Map<String, String> fieldKeys;
+
+        private ElementRule(Handler handler, String childName, Map<String, String> fieldKeys) {
+            this.handler = handler;
+            this.childName = childName;
+            this.fieldKeys = fieldKeys;
+        }
+
+        /**
+         * Output key of a field inside a MATCH_LIST entry
+         */
+        String fieldKey(String fieldName) {
+            return fieldKeys.getOrDefault(fieldName, fieldName);
+        }
+    }
+
+    private final Map<String, ElementRule> rules;
+    private final String secondMatchScore;
+    // Element name to parent name (or ANY_PARENT) to declared type
+    private final Map<String, Map<String, LeafType>> leafTypes;
+
+    private ConversionPlan(Map<String, ElementRule> rules, String secondMatchScore,
+                           Map<String, Map<String, LeafType>> leafTypes) {
+        this.rules = rules;
+        this.secondMatchScore = secondMatchScore;
+        this.leafTypes = leafTypes;
+    }
+
+    static ConversionPlan compile(Properties config) {
+        Map<String, String> declared = new HashMap<>();
+        declared.put("MatchDetails", "match-list:Match");
+        declared.put("Values", "value-list:Value");
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith(RULE_PREFIX)) {
+                declared.put(key.substring(RULE_PREFIX.length()), config.getProperty(key).trim());
+            }
+        }
+
+        Map<String, ElementRule> rules = new HashMap<>();
+        for (Map.Entry<String, String> entry : declared.entrySet()) {
+            ElementRule rule = compileRule(entry.getKey(), entry.getValue(), config);
+            if (rule.handler != Handler.GENERIC) {
+                rules.put(entry.getKey(), rule);
+            }
+        }
+
+        String overrideValue = config.getProperty("override.second.match.score");
+        String secondMatchScore;
+        if (overrideValue != null && !overrideValue.isEmpty()) {
+            secondMatchScore = overrideValue;
+        } else if ("40".equals(config.getProperty("fixed.second.match.score"))) {
+            secondMatchScore = "40";
+        } else {
+            secondMatchScore = null;
+        }
+
+        return new ConversionPlan(Collections.unmodifiableMap(rules), secondMatchScore, leafTypes(config));
+    }
+
+    private static ElementRule compileRule(String elementName, String spec, Properties config) {
+        int separator = spec.indexOf(':');
+        String handlerName = separator < 0 ? spec : spec.substring(0, separator);
+        String childName = separator < 0 ? null : spec.substring(separator + 1).trim();
+
+        switch (handlerName) {
+            case "match-list":
+                return new ElementRule(Handler.MATCH_LIST, requireChild(elementName, spec, childName),
+                        fieldKeys(elementName, config));
+            case "value-list":
+                return new ElementRule(Handler.VALUE_LIST, requireChild(elementName, spec, childName),
+                        Collections.emptyMap());
+            case "array":
+                return new ElementRule(Handler.ARRAY, null, Collections.emptyMap());
+            case "skip":
+                return new ElementRule(Handler.SKIP, null, Collections.emptyMap());
+            case "generic":
+                return ElementRule.GENERIC;
+            default:
+                throw new IllegalArgumentException("Unknown element rule for " + elementName + ": " + spec);
+        }
+    }
+
+    private static String requireChild(String elementName, String spec, String childName) {
+        if (childName == null || childName.isEmpty()) {
+            throw new IllegalArgumentException("Element rule for " + elementName + " needs a child element: " + spec);
+        }
+        return childName;
+    }
+
+    /**
+     * Collects field.mapping.<element>.<field> entries into field name to output key
+     */
+    private static Map<String, String> fieldKeys(String elementName, Properties config) {
+        String prefix = FIELD_MAPPING_PREFIX + elementName + ".";
+        Map<String, String> keys = new HashMap<>();
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                keys.put(key.substring(prefix.length()), config.getProperty(key));
+            }
+        }
+        return Collections.unmodifiableMap(keys);
+    }
+
+    private static Map<String, Map<String, LeafType>> leafTypes(Properties config) {
+        Map<String, Map<String, LeafType>> types = new HashMap<>();
+        for (String key : config.stringPropertyNames()) {
+            if (!key.startsWith(LEAF_TYPE_PREFIX)) {
+                continue;
+            }
+            String path = key.substring(LEAF_TYPE_PREFIX.length());
+            int separator = path.lastIndexOf('/');
+            String parentName = separator < 0 ? ANY_PARENT : path.substring(0, separator);
+            String elementName = path.substring(separator + 1);
+            LeafType type;
+            try {
+                type = LeafType.valueOf(config.getProperty(key).trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown leaf type for " + path + ": " + config.getProperty(key));
+            }
+            types.computeIfAbsent(elementName, k -> new HashMap<>()).put(parentName, type);
+        }
+        return types;
+    }
+
+    ElementRule rule(String elementName) {
+        return rules.getOrDefault(elementName, ElementRule.GENERIC);
+    }
+
+    /**
+     * Declared type of a leaf, preferring a declaration for its parent over one for any parent
+     */
+    LeafType leafType(String parentName, String elementName) {
+        Map<String, LeafType> byParent = leafTypes.get(elementName);
+        if (byParent == null) {
+            return LeafType.STRING;
+        }
+        LeafType type = parentName == null ? null : byParent.get(parentName);
+        return type != null ? type : byParent.getOrDefault(ANY_PARENT, LeafType.STRING);
+    }
+
+    boolean isScore(String elementName) {
+        return SCORE_ELEMENT.equals(elementName);
+    }
+
+    /**
+     * Score value to use at the given position, applying the second match override
+     */
+    String score(String scoreStr, int index) {
+        return index == 1 && secondMatchScore != null ? secondMatchScore : scoreStr;
+    }
+}
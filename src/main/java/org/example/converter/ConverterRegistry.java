@@ -0,0 +1,257 @@
+package org.example.converter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Converters shared by profile, compiled once and used from any number of threads.
+ *
+ * The {@value #DEFAULT_PROFILE} profile is the base configuration. Every {@code <profile>.properties}
+ * file in the profile directory is another profile, holding the overrides of one tenant on top of
+ * the base configuration ({@code default.properties} overrides the base configuration itself).
+ *
+ * Once {@link #startWatching()} is called the directory is watched and a changed file is compiled
+ * into a new converter off the request path, then swapped in with a single reference update.
+ * Conversions already running finish on the converter they started with; a file that fails to
+ * compile leaves the previous converter in place.
+ */
+public final class ConverterRegistry implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConverterRegistry.class);
+
+    public static final String DEFAULT_PROFILE = "default";
+    private static final String PROFILE_SUFFIX = ".properties";
+    private static final long SETTLE_MILLIS = 200;
+
+    private static final class DefaultHolder {
+        static final ConverterRegistry INSTANCE = fromConfig(XmlToJsonConverter.loadProperties());
+    }
+
+    private final Properties baseConfig;
+    private final Path directory;
+    private final Map<String, AtomicReference<XmlToJsonConverter>> profiles = new ConcurrentHashMap<>();
+    private volatile WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * Registry of the base configuration and the profiles found in the directory, which may be null
+     */
+    public ConverterRegistry(Properties baseConfig, Path directory) throws IOException {
+        this.baseConfig = copy(baseConfig);
+        this.directory = directory;
+        profiles.put(DEFAULT_PROFILE, new AtomicReference<>(compile(DEFAULT_PROFILE)));
+        if (directory != null) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + PROFILE_SUFFIX)) {
+                for (Path file : files) {
+                    String profile = profileName(file.getFileName());
+                    if (!DEFAULT_PROFILE.equals(profile)) {
+                        profiles.put(profile, new AtomicReference<>(compile(profile)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Registry with the profiles of the directory in converter.profiles.dir, if set. A directory that
+     * cannot be read leaves only the default profile.
+     */
+    public static ConverterRegistry fromConfig(Properties baseConfig) {
+        String directory = baseConfig.getProperty("converter.profiles.dir", "").trim();
+        if (!directory.isEmpty()) {
+            try {
+                return new ConverterRegistry(baseConfig, Path.of(directory));
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to load converter profiles from {}, using the default profile only", directory, e);
+            }
+        }
+        try {
+            return new ConverterRegistry(baseConfig, null);
+        } catch (IOException e) {
+            // Nothing is read without a directory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Registry of the classpath application.properties, created once per JVM
+     */
+    public static ConverterRegistry getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Current converter of the profile
+     */
+    public XmlToJsonConverter get(String profile) {
+        AtomicReference<XmlToJsonConverter> converter = profiles.get(profile);
+        if (converter == null) {
+            throw new IllegalArgumentException("Unknown converter profile: " + profile);
+        }
+        return converter.get();
+    }
+
+    public XmlToJsonConverter getDefaultConverter() {
+        return get(DEFAULT_PROFILE);
+    }
+
+    public Set<String> getProfiles() {
+        return Collections.unmodifiableSet(new TreeSet<>(profiles.keySet()));
+    }
+
+    /**
+     * Starts watching the profile directory for changed, added and removed profiles
+     */
+    public synchronized void startWatching() throws IOException {
+        if (directory == null || watchService != null) {
+            return;
+        }
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watcher = new Thread(this::watch, "converter-profile-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info("Watching converter profiles in {}", directory);
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                // Editors save in several steps, a file is reloaded once it has been quiet for a moment
+                Set<String> changed = new TreeSet<>();
+                boolean overflow = false;
+                for (WatchKey key = service.take(); key != null;
+                     key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else if (event.context() instanceof Path
+                                && event.context().toString().endsWith(PROFILE_SUFFIX)) {
+                            changed.add(profileName((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        logger.warn("Converter profile directory {} is no longer accessible", directory);
+                        return;
+                    }
+                }
+                if (overflow) {
+                    reloadAll();
+                } else {
+                    changed.forEach(this::changed);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Events were lost, every profile file and every known profile may have changed
+     */
+    private void reloadAll() {
+        Set<String> changed = new TreeSet<>(profiles.keySet());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + PROFILE_SUFFIX)) {
+            for (Path file : files) {
+                changed.add(profileName(file.getFileName()));
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to list converter profiles in {}", directory, e);
+        }
+        for (String profile : changed) {
+            changed(profile);
+        }
+    }
+
+    private void changed(String profile) {
+        // Without its file the default profile goes back to the base configuration
+        if (DEFAULT_PROFILE.equals(profile) || Files.isRegularFile(directory.resolve(profile + PROFILE_SUFFIX))) {
+            reload(profile);
+        } else if (profiles.remove(profile) != null) {
+            logger.info("Removed converter profile {}", profile);
+        }
+    }
+
+    /**
+     * Compiles the profile again and swaps it in, unless its configuration is unchanged
+     */
+    void reload(String profile) {
+        XmlToJsonConverter converter;
+        try {
+            converter = compile(profile);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to reload converter profile {}, keeping the previous configuration", profile, e);
+            return;
+        }
+        AtomicReference<XmlToJsonConverter> current = profiles.get(profile);
+        if (current == null) {
+            profiles.put(profile, new AtomicReference<>(converter));
+            logger.info("Added converter profile {}", profile);
+        } else if (!current.get().hasSameConfig(converter)) {
+            // An unchanged configuration keeps the converter and what it learned
+            current.set(converter);
+            logger.info("Reloaded converter profile {}", profile);
+        }
+    }
+
+    private XmlToJsonConverter compile(String profile) throws IOException {
+        Properties config = copy(baseConfig);
+        Path file = directory == null ? null : directory.resolve(profile + PROFILE_SUFFIX);
+        if (file != null && Files.isRegularFile(file)) {
+            try (InputStream input = Files.newInputStream(file)) {
+                config.load(input);
+            }
+        }
+        return new XmlToJsonConverter(config);
+    }
+
+    private static String profileName(Path fileName) {
+        String name = fileName.toString();
+        return name.substring(0, name.length() - PROFILE_SUFFIX.length());
+    }
+
+    private static Properties copy(Properties config) {
+        Properties copy = new Properties();
+        for (String key : config.stringPropertyNames()) {
+            copy.setProperty(key, config.getProperty(key));
+        }
+        return copy;
+    }
+
+    /**
+     * Stops watching the profile directory; the converters stay usable
+     */
+    @Override
+    public synchronized void close() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the converter profile watcher", e);
+        }
+        watcher.interrupt();
+        watchService = null;
+    }
+}
@@ -0,0 +1,110 @@
+package org.example.converter;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stream wrappers counting the bytes passing through, for the metrics and the byte limits of
+ * converted documents and server requests
+ */
+public final class CountingStreams {
+
+    private CountingStreams() {
+    }
+
+    /**
+     * Input counting the bytes read, failing once more than its limit has been read. XML parsers do
+     * not keep the cause of read failures, so the stream remembers that the limit was crossed.
+     */
+    public static final class Input extends FilterInputStream {
+        private final long limit;
+        private long count;
+        private boolean exceeded;
+
+        /**
+         * Input counting without a limit
+         */
+        Input(InputStream in) {
+            this(in, 0);
+        }
+
+        /**
+         * Input failing once more than the limit has been read, or only counting with 0
+         */
+        public Input(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                consumed(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            consumed(skipped);
+            return skipped;
+        }
+
+        private void consumed(long bytes) throws IOException {
+            count += bytes;
+            if (limit > 0 && count > limit) {
+                exceeded = true;
+                throw new IOException("Input exceeds " + limit + " bytes");
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Whether reading failed because the limit was crossed
+         */
+        public boolean isExceeded() {
+            return exceeded;
+        }
+    }
+
+    static final class Output extends FilterOutputStream {
+        private long count;
+
+        Output(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
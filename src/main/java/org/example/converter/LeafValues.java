@@ -0,0 +1,198 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BigIntegerNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Leaf values of both engines, typed as declared by the {@link ConversionPlan}.
+ *
+ * Text is read straight from the character buffer: surrounding whitespace is skipped by index,
+ * integers up to 18 digits and booleans are parsed in place, and only string and decimal leaves
+ * are copied out. A leaf is a String, Long, BigInteger, BigDecimal or Boolean.
+ */
+final class LeafValues {
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private LeafValues() {
+    }
+
+    /**
+     * Value of a leaf text, or {@code blank} when it is only whitespace
+     */
+    static Object value(CharSequence text, ConversionPlan.LeafType type, Object blank) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return blank;
+        }
+
+        Object typed = null;
+        switch (type) {
+            case INTEGER:
+                typed = integer(text, start, end);
+                break;
+            case DECIMAL:
+                typed = decimal(text, start, end);
+                break;
+            case NUMBER:
+                typed = integer(text, start, end);
+                if (typed == null) {
+                    typed = decimal(text, start, end);
+                }
+                break;
+            case BOOLEAN:
+                typed = bool(text, start, end);
+                break;
+            default:
+                break;
+        }
+        // A String hands out itself when the range covers it
+        return typed != null ? typed : text.subSequence(start, end).toString();
+    }
+
+    private static Object integer(CharSequence text, int start, int end) {
+        int i = start;
+        char sign = text.charAt(i);
+        if (sign == '-' || sign == '+') {
+            i++;
+        }
+        int digits = end - i;
+        if (digits == 0) {
+            return null;
+        }
+        long value = 0;
+        for (int j = i; j < end; j++) {
+            char c = text.charAt(j);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            value = value * 10 + (c - '0');
+        }
+        if (digits > MAX_LONG_DIGITS) {
+            return new BigInteger(text.subSequence(start, end).toString());
+        }
+        return sign == '-' ? -value : value;
+    }
+
+    private static Object decimal(CharSequence text, int start, int end) {
+        int i = start;
+        char sign = text.charAt(i);
+        if (sign == '-' || sign == '+') {
+            i++;
+        }
+        int digits = 0;
+        while (i < end && isDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(text.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return null;
+        }
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                i++;
+            }
+            int exponentStart = i;
+            while (i < end && isDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == exponentStart) {
+                return null;
+            }
+        }
+        return i == end ? new BigDecimal(text.subSequence(start, end).toString()) : null;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * xs:boolean lexical forms
+     */
+    private static Object bool(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length == 1) {
+            char c = text.charAt(start);
+            return c == '1' ? Boolean.TRUE : c == '0' ? Boolean.FALSE : null;
+        }
+        if (regionMatches(text, start, length, "true")) {
+            return Boolean.TRUE;
+        }
+        return regionMatches(text, start, length, "false") ? Boolean.FALSE : null;
+    }
+
+    private static boolean regionMatches(CharSequence text, int start, int length, String expected) {
+        if (length != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a leaf value, with null written as JSON null
+     */
+    static void write(JsonGenerator out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeString((String) value);
+        } else if (value instanceof Long) {
+            out.writeNumber((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            out.writeNumber((BigInteger) value);
+        } else {
+            out.writeNull();
+        }
+    }
+
+    /**
+     * Tree node of a leaf value for the DOM engine, serialized exactly like {@link #write}
+     */
+    static JsonNode node(Object value) {
+        if (value instanceof String) {
+            return TextNode.valueOf((String) value);
+        } else if (value instanceof Long) {
+            return LongNode.valueOf((Long) value);
+        } else if (value instanceof Boolean) {
+            return BooleanNode.valueOf((Boolean) value);
+        } else if (value instanceof BigDecimal) {
+            // Not normalized like JsonNodeFactory does, so the scale written matches the text
+            return DecimalNode.valueOf((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            return BigIntegerNode.valueOf((BigInteger) value);
+        }
+        return NullNode.getInstance();
+    }
+}
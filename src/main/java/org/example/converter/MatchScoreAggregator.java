@@ -0,0 +1,210 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MatchSummary aggregates for a single conversion, fed with each Match score as the conversion
+ * walk reaches it. Integer and long modes accumulate in primitive longs and cap the total at the
+ * configured maximum; biginteger mode keeps an exact total.
+ */
+final class MatchScoreAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(MatchScoreAggregator.class);
+
+    private static final String SUMMARY = "MatchSummary";
+    private static final String TOTAL = "TotalMatchScore";
+    private static final String MATCH_COUNT = "MatchCount";
+    private static final String MIN = "MinMatchScore";
+    private static final String MAX = "MaxMatchScore";
+    private static final String AVERAGE = "AverageMatchScore";
+
+    private final Settings settings;
+
+    private int matchCount;
+    private int scoreCount;
+    private boolean capped;
+    // Primitive accumulators for the integer and long modes
+    private long total;
+    // Uncapped sum for the average, moved to a BigInteger only if it overflows a long
+    private long sum;
+    private BigInteger overflowSum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    // Exact accumulators for the biginteger mode
+    private BigInteger bigTotal;
+    private BigInteger bigMin;
+    private BigInteger bigMax;
+
+    MatchScoreAggregator(Settings settings) {
+        this.settings = settings;
+        if (settings.bigInteger) {
+            bigTotal = BigInteger.ZERO;
+        }
+    }
+
+    void countMatch() {
+        matchCount++;
+    }
+
+    int getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * Adds the score of one Match. Non-numeric and out-of-range values are skipped.
+     */
+    void add(String scoreStr) {
+        if (settings.bigInteger) {
+            addBig(scoreStr);
+            return;
+        }
+        long score;
+        try {
+            score = Long.parseLong(scoreStr);
+        } catch (NumberFormatException e) {
+            logger.warn("Non-numeric score found: {}. Skipping this value.", scoreStr);
+            return;
+        }
+        if (score < settings.minScore || score > settings.maxScore) {
+            logger.warn("Score {} is outside [{}, {}]. Skipping this value.", score, settings.minScore, settings.maxScore);
+            return;
+        }
+
+        scoreCount++;
+        min = Math.min(min, score);
+        max = Math.max(max, score);
+        if (overflowSum == null) {
+            long next = sum + score;
+            if (((sum ^ next) & (score ^ next)) < 0) {
+                overflowSum = BigInteger.valueOf(sum).add(BigInteger.valueOf(score));
+            } else {
+                sum = next;
+            }
+        } else {
+            overflowSum = overflowSum.add(BigInteger.valueOf(score));
+        }
+
+        // Check for potential overflow
+        if (!capped) {
+            if (overflowSum != null || sum > settings.maxTotal) {
+                logger.warn("Total score exceeds maximum {} value. Returning max value", settings.dataType);
+                total = settings.maxTotal;
+                capped = true;
+            } else {
+                total = sum;
+            }
+        }
+    }
+
+    private void addBig(String scoreStr) {
+        BigInteger score;
+        try {
+            score = new BigInteger(scoreStr);
+        } catch (NumberFormatException e) {
+            logger.warn("Non-numeric score found: {}. Skipping this value.", scoreStr);
+            return;
+        }
+        if (score.compareTo(settings.bigMinScore) < 0 || score.compareTo(settings.bigMaxScore) > 0) {
+            logger.warn("Score {} is outside [{}, {}]. Skipping this value.", score, settings.minScore, settings.maxScore);
+            return;
+        }
+
+        scoreCount++;
+        bigMin = bigMin == null ? score : bigMin.min(score);
+        bigMax = bigMax == null ? score : bigMax.max(score);
+        bigTotal = bigTotal.add(score);
+    }
+
+    private String getAverage() {
+        BigDecimal exactSum = settings.bigInteger ? new BigDecimal(bigTotal)
+                : overflowSum != null ? new BigDecimal(overflowSum) : BigDecimal.valueOf(sum);
+        return exactSum.divide(BigDecimal.valueOf(scoreCount), 2, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * MatchSummary fields in output order, typed by the leaf.type declarations for MatchSummary
+     */
+    private Map<String, Object> summaryFields(ConversionPlan plan) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put(TOTAL, typed(plan, TOTAL, total, settings.bigInteger ? bigTotal : null));
+        if (settings.aggregatesEnabled) {
+            fields.put(MATCH_COUNT, typed(plan, MATCH_COUNT, matchCount, null));
+            if (scoreCount > 0) {
+                fields.put(MIN, typed(plan, MIN, min, settings.bigInteger ? bigMin : null));
+                fields.put(MAX, typed(plan, MAX, max, settings.bigInteger ? bigMax : null));
+                fields.put(AVERAGE, LeafValues.value(getAverage(), plan.leafType(SUMMARY, AVERAGE), ""));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * A whole-number summary field, written without going through a String unless declared as one
+     */
+    private static Object typed(ConversionPlan plan, String field, long value, BigInteger bigValue) {
+        switch (plan.leafType(SUMMARY, field)) {
+            case INTEGER:
+            case NUMBER:
+                return bigValue != null ? bigValue : (Object) value;
+            case DECIMAL:
+                return bigValue != null ? new BigDecimal(bigValue) : BigDecimal.valueOf(value);
+            default:
+                return bigValue != null ? bigValue.toString() : String.valueOf(value);
+        }
+    }
+
+    /**
+     * Fills a MatchSummary node for the DOM engine
+     */
+    void putSummary(ObjectNode summaryNode, ConversionPlan plan) {
+        for (Map.Entry<String, Object> field : summaryFields(plan).entrySet()) {
+            summaryNode.set(field.getKey(), LeafValues.node(field.getValue()));
+        }
+    }
+
+    /**
+     * Writes the MatchSummary fields for the streaming engine
+     */
+    void writeSummary(JsonGenerator out, ConversionPlan plan) throws IOException {
+        for (Map.Entry<String, Object> field : summaryFields(plan).entrySet()) {
+            out.writeFieldName(field.getKey());
+            LeafValues.write(out, field.getValue());
+        }
+    }
+
+    /**
+     * Aggregation settings compiled once per converter
+     */
+    static final class Settings {
+        final String dataType;
+        final boolean bigInteger;
+        final long maxTotal;
+        final long minScore;
+        final long maxScore;
+        final BigInteger bigMinScore;
+        final BigInteger bigMaxScore;
+        final boolean aggregatesEnabled;
+
+        Settings(String dataType, int maxIntValue, long maxLongValue, String minScore, String maxScore,
+                 boolean aggregatesEnabled) {
+            this.dataType = dataType.toLowerCase(Locale.ROOT);
+            this.bigInteger = "biginteger".equals(this.dataType);
+            this.maxTotal = "long".equals(this.dataType) ? maxLongValue : maxIntValue;
+            this.minScore = minScore == null || minScore.isBlank() ? Long.MIN_VALUE : Long.parseLong(minScore.trim());
+            this.maxScore = maxScore == null || maxScore.isBlank() ? Long.MAX_VALUE : Long.parseLong(maxScore.trim());
+            this.bigMinScore = BigInteger.valueOf(this.minScore);
+            this.bigMaxScore = BigInteger.valueOf(this.maxScore);
+            this.aggregatesEnabled = aggregatesEnabled;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.util.Locale;
+
+/**
+ * Serialization format of the converter output.
+ *
+ * Each format has one Jackson factory, created on first use and shared by all converters;
+ * factories are thread-safe and keep the symbol tables and buffer recyclers that make
+ * generator creation cheap. MessagePack is loaded reflectively so that
+ * org.msgpack:jackson-dataformat-msgpack stays an optional dependency.
+ */
+public enum OutputFormat {
+    JSON("application/json", false),
+    SMILE("application/x-jackson-smile", true),
+    CBOR("application/cbor", true),
+    MESSAGEPACK("application/msgpack", true);
+
+    private static final String MESSAGEPACK_FACTORY = "org.msgpack.jackson.dataformat.MessagePackFactory";
+
+    private final String contentType;
+    private final boolean binary;
+    private volatile JsonFactory factory;
+
+    OutputFormat(String contentType, boolean binary) {
+        this.contentType = contentType;
+        this.binary = binary;
+    }
+
+    /**
+     * Parses a configured format name such as json, smile, cbor or messagepack (msgpack)
+     */
+    public static OutputFormat of(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT);
+        if ("MSGPACK".equals(normalized)) {
+            return MESSAGEPACK;
+        }
+        try {
+            return valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown output format: " + name, e);
+        }
+    }
+
+    /**
+     * Media type of output in this format
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Shared generator factory for this format
+     */
+    JsonFactory factory() {
+        JsonFactory result = factory;
+        if (result == null) {
+            synchronized (this) {
+                result = factory;
+                if (result == null) {
+                    result = createFactory();
+                    factory = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private JsonFactory createFactory() {
+        switch (this) {
+            case SMILE:
+                return new SmileFactory();
+            case CBOR:
+                return new CBORFactory();
+            case MESSAGEPACK:
+                try {
+                    return (JsonFactory) Class.forName(MESSAGEPACK_FACTORY).getConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    throw new IllegalStateException(
+                            "MessagePack output needs org.msgpack:jackson-dataformat-msgpack on the classpath", e);
+                }
+            default:
+                return new JsonFactory();
+        }
+    }
+}
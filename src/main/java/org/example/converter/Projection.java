@@ -0,0 +1,181 @@
+package org.example.converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selection of the subtrees to convert, from include and exclude paths.
+ *
+ * A path is a list of element names separated by {@code /}, relative to the root element
+ * ({@code ResultBlock/MatchDetails}) or absolute when it starts with {@code /}
+ * ({@code /Response/API/RetStatus}); {@code *} stands for any one element. Without includes the
+ * whole document is selected. An included element is converted with everything below it, and
+ * its ancestors are kept as containers for it; an excluded element is left out with everything
+ * below it, whether included or not. Elements handled by a match-list or value-list rule are
+ * always converted whole.
+ *
+ * Left out subtrees are skipped by the parser without building values for them. Their Match
+ * scores still count towards MatchSummary, so the summary is the same as without a projection.
+ */
+public final class Projection {
+    /** Converts everything */
+    public static final Projection ALL = new Projection(new PathNode(), new PathNode());
+
+    private final State documentState;
+
+    private Projection(PathNode includes, PathNode excludes) {
+        List<PathNode> includeNodes = includes.isEmpty() ? Collections.emptyList() : Collections.singletonList(includes);
+        List<PathNode> excludeNodes = excludes.isEmpty() ? Collections.emptyList() : Collections.singletonList(excludes);
+        this.documentState = includeNodes.isEmpty() && excludeNodes.isEmpty()
+                ? State.EVERYTHING
+                : new State(includeNodes.isEmpty(), includeNodes, excludeNodes);
+    }
+
+    public static Projection of(Collection<String> includes, Collection<String> excludes) {
+        PathNode includeRoot = new PathNode();
+        PathNode excludeRoot = new PathNode();
+        for (String path : includes) {
+            addPath(includeRoot, path);
+        }
+        for (String path : excludes) {
+            addPath(excludeRoot, path);
+        }
+        return includeRoot.isEmpty() && excludeRoot.isEmpty() ? ALL : new Projection(includeRoot, excludeRoot);
+    }
+
+    /**
+     * Projection from comma-separated include and exclude paths, either of which may be null or blank
+     */
+    public static Projection parse(String includes, String excludes) {
+        return of(split(includes), split(excludes));
+    }
+
+    private static List<String> split(String paths) {
+        if (paths == null || paths.isBlank()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (String path : paths.split(",")) {
+            if (!path.isBlank()) {
+                result.add(path.trim());
+            }
+        }
+        return result;
+    }
+
+    private static void addPath(PathNode root, String path) {
+        String trimmed = path.trim();
+        List<String> segments = new ArrayList<>();
+        if (trimmed.startsWith("/")) {
+            trimmed = trimmed.substring(1);
+        } else {
+            // Relative to the root element, whatever its name
+            segments.add(PathNode.ANY);
+        }
+        segments.addAll(Arrays.asList(trimmed.split("/")));
+
+        PathNode node = root;
+        for (String segment : segments) {
+            if (segment.isEmpty()) {
+                throw new IllegalArgumentException("Invalid projection path: " + path);
+            }
+            node = node.children.computeIfAbsent(segment, k -> new PathNode());
+        }
+        node.terminal = true;
+    }
+
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * State of the root element; the root is converted even when the paths leave it out
+     */
+    State root(String rootName) {
+        State state = documentState.child(rootName);
+        return state != null ? state : State.NOTHING;
+    }
+
+    /**
+     * Selection state of one open element
+     */
+    static final class State {
+        static final State EVERYTHING = new State(true, Collections.emptyList(), Collections.emptyList());
+        static final State NOTHING = new State(false, Collections.emptyList(), Collections.emptyList());
+
+        // Whole subtree selected, apart from what the exclude paths still leave out
+        private final boolean included;
+        private final List<PathNode> includeNodes;
+        private final List<PathNode> excludeNodes;
+
+        private State(boolean included, List<PathNode> includeNodes, List<PathNode> excludeNodes) {
+            this.included = included;
+            this.includeNodes = includeNodes;
+            this.excludeNodes = excludeNodes;
+        }
+
+        /**
+         * State of a child element, or null when it is left out
+         */
+        State child(String childName) {
+            if (this == EVERYTHING) {
+                return EVERYTHING;
+            }
+            List<PathNode> excludes = step(excludeNodes, childName);
+            if (excludes == null) {
+                return null;
+            }
+            if (included) {
+                return excludes.isEmpty() ? EVERYTHING : new State(true, Collections.emptyList(), excludes);
+            }
+            List<PathNode> includes = step(includeNodes, childName);
+            if (includes == null) {
+                return excludes.isEmpty() ? EVERYTHING : new State(true, Collections.emptyList(), excludes);
+            }
+            return includes.isEmpty() ? null : new State(false, includes, excludes);
+        }
+
+        /**
+         * Path nodes reached by the child, or null when one of them ends a path
+         */
+        private static List<PathNode> step(List<PathNode> nodes, String childName) {
+            if (nodes.isEmpty()) {
+                return nodes;
+            }
+            List<PathNode> next = new ArrayList<>(2);
+            for (PathNode node : nodes) {
+                PathNode named = node.children.get(childName);
+                PathNode any = node.children.get(PathNode.ANY);
+                if (named != null && named.terminal || any != null && any.terminal) {
+                    return null;
+                }
+                if (named != null) {
+                    next.add(named);
+                }
+                if (any != null) {
+                    next.add(any);
+                }
+            }
+            return next.isEmpty() ? Collections.emptyList() : next;
+        }
+    }
+
+    /**
+     * Trie of path segments
+     */
+    private static final class PathNode {
+        static final String ANY = "*";
+
+        final Map<String, PathNode> children = new HashMap<>();
+        boolean terminal;
+
+        boolean isEmpty() {
+            return children.isEmpty();
+        }
+    }
+}
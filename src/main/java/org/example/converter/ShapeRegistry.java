@@ -0,0 +1,239 @@
+package org.example.converter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Output shape of the documents, keyed by element path from the root, such as
+ * {@code Response/ResultBlock/ErrorWarnings/Warnings/Warning}.
+ *
+ * Paths listed in {@code shape.array.paths} are always emitted as arrays, even with a single
+ * occurrence, the way {@code element.rule.<Element>=array} does by name. With
+ * {@code shape.learn.documents=N} the first N documents are converted as usual while the registry
+ * records which paths repeat; from then on those paths are arrays as well, so consumers see one
+ * stable schema. The registry also learns the usual array and object sizes, used to presize
+ * containers. Match-list and value-list paths declared in {@code shape.direct.paths} only have
+ * their direct children scanned for Match and Value items. That rule changes which items are
+ * converted, not just how they look, so it is never learned: a document nesting an item deeper
+ * than any seen while learning would lose it.
+ */
+public final class ShapeRegistry {
+    // Presizing stops there, larger containers grow as usual
+    private static final int MAX_PRESIZE = 1024;
+
+    private final Node documentNode = new Node(this, null);
+    private final int learnDocuments;
+    private final AtomicInteger learnedDocuments = new AtomicInteger();
+    private volatile boolean learning;
+
+    private ShapeRegistry(int learnDocuments) {
+        this.learnDocuments = learnDocuments;
+        this.learning = learnDocuments > 0;
+    }
+
+    /**
+     * Registry from the shape.* configuration, or null when no shape is declared or learned
+     */
+    static ShapeRegistry fromConfig(Properties config) {
+        int learnDocuments = Integer.parseInt(config.getProperty("shape.learn.documents", "0").trim());
+        String arrayPaths = config.getProperty("shape.array.paths", "");
+        String directPaths = config.getProperty("shape.direct.paths", "");
+        if (learnDocuments <= 0 && arrayPaths.isBlank() && directPaths.isBlank()) {
+            return null;
+        }
+        ShapeRegistry registry = new ShapeRegistry(learnDocuments);
+        for (String path : arrayPaths.split(",")) {
+            if (!path.isBlank()) {
+                Node node = registry.declare(path);
+                node.declaredArray = true;
+                node.array = true;
+            }
+        }
+        for (String path : directPaths.split(",")) {
+            if (!path.isBlank()) {
+                registry.declare(path).directOnly = true;
+            }
+        }
+        return registry;
+    }
+
+    private Node declare(String path) {
+        Node node = documentNode;
+        for (String name : path.trim().replaceFirst("^/", "").split("/")) {
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Invalid shape path: " + path);
+            }
+            node = node.children.computeIfAbsent(name, k -> new Node(this, k));
+        }
+        return node;
+    }
+
+    /**
+     * Node of the root element
+     */
+    Node root(String rootName) {
+        return documentNode.child(rootName);
+    }
+
+    /**
+     * Whether conversions record their shape
+     */
+    boolean isLearning() {
+        return learning;
+    }
+
+    /**
+     * Counts a document converted while learning, and applies what was learned after the last one
+     */
+    void documentLearned() {
+        if (learnedDocuments.incrementAndGet() == learnDocuments) {
+            documentNode.apply();
+            learning = false;
+        }
+    }
+
+    /**
+     * Paths currently emitted as arrays, the stable part of the output schema
+     */
+    public Set<String> getArrayPaths() {
+        Set<String> paths = new TreeSet<>();
+        documentNode.collectArrayPaths("", paths);
+        return Collections.unmodifiableSet(paths);
+    }
+
+    public int getLearnedDocuments() {
+        return Math.min(learnedDocuments.get(), learnDocuments);
+    }
+
+    public boolean isLearningComplete() {
+        return !learning;
+    }
+
+    /**
+     * Shape of one element path. Only read while converting; written while learning.
+     */
+    static final class Node {
+        /** Shape of paths the registry knows nothing about, and of everything without a registry */
+        static final Node NONE = new Node(null, null);
+
+        private final ShapeRegistry registry;
+        final String name;
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private boolean declaredArray;
+        private boolean directOnly;
+        // Recorded while learning
+        private volatile boolean repeated;
+        private volatile int maxItems;
+        private volatile int maxFields;
+        // Applied once learning is complete
+        private volatile boolean array;
+
+        private Node(ShapeRegistry registry, String name) {
+            this.registry = registry;
+            this.name = name;
+        }
+
+        /**
+         * Node of a child element; unknown children are only added while learning
+         */
+        Node child(String childName) {
+            if (this == NONE) {
+                return NONE;
+            }
+            Node child = registry.learning
+                    ? children.computeIfAbsent(childName, k -> new Node(registry, k))
+                    : children.get(childName);
+            return child != null ? child : NONE;
+        }
+
+        /**
+         * Whether the shape of this element is to be recorded
+         */
+        boolean isLearning() {
+            return this != NONE && registry.learning;
+        }
+
+        boolean isArray() {
+            return array;
+        }
+
+        /**
+         * Whether the Match or Value items of this match-list or value-list element are declared to be
+         * direct children
+         */
+        boolean isDirectOnly() {
+            return directOnly;
+        }
+
+        /**
+         * Usual number of occurrences as an array, 0 when unknown
+         */
+        int expectedItems() {
+            return maxItems;
+        }
+
+        /**
+         * Usual number of fields as an object, 0 when unknown
+         */
+        int expectedFields() {
+            return maxFields;
+        }
+
+        /**
+         * Records an element occurring more than once below the same parent
+         */
+        void recordRepeated(int items) {
+            repeated = true;
+            recordItems(items);
+        }
+
+        /**
+         * Records how often each child element was converted below one occurrence of this element;
+         * the children converted more than once are repeated
+         */
+        void recordChildren(Map<String, Integer> occurrences) {
+            for (Map.Entry<String, Integer> occurrence : occurrences.entrySet()) {
+                if (occurrence.getValue() > 1) {
+                    child(occurrence.getKey()).recordRepeated(occurrence.getValue());
+                }
+            }
+        }
+
+        /**
+         * Records the number of items collected for this element, without making it an array
+         */
+        void recordItems(int items) {
+            if (items > maxItems) {
+                maxItems = Math.min(items, MAX_PRESIZE);
+            }
+        }
+
+        void recordFields(int fields) {
+            if (fields > maxFields) {
+                maxFields = Math.min(fields, MAX_PRESIZE);
+            }
+        }
+
+        private void apply() {
+            array = declaredArray || repeated;
+            for (Node child : children.values()) {
+                child.apply();
+            }
+        }
+
+        private void collectArrayPaths(String prefix, Set<String> paths) {
+            for (Node child : children.values()) {
+                String path = prefix.isEmpty() ? child.name : prefix + "/" + child.name;
+                if (child.array) {
+                    paths.add(path);
+                }
+                child.collectArrayPaths(path, paths);
+            }
+        }
+    }
+}
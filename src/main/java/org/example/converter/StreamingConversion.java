@@ -0,0 +1,939 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.example.metrics.ConversionMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Single-use streaming conversion of one XML document.
+ *
+ * Reads events from an {@link XMLStreamReader} and writes to a {@link JsonGenerator} without
+ * building a DOM or a JsonNode tree. The open elements are kept as an explicit stack of frames; a
+ * closed child is held as a flat {@link TokenBuffer} (or a plain {@link LeafValues} value for
+ * leaves) until its parent closes, because a later sibling of the same name folds it into an array
+ * in its place, exactly like the DOM engine does, and nothing in the plan or the shape rules such
+ * a sibling out. The output is therefore buffered, not streamed: nothing is written before the
+ * root closes, the root holds the whole document as tokens by then, and each level copies the
+ * tokens of its children once. The MatchSummary written first in ResultBlock depends on the last
+ * Match of the document as well. What the engine saves over the DOM one is the input tree and
+ * the JsonNode tree, not the size of the output.
+ *
+ * The {@link ConversionLimits} are checked on every start tag and text event, so an oversized
+ * document fails before any more of it is read.
+ *
+ * Only the innermost open leaf collects text at any time, so all leaves share one text buffer,
+ * which is kept per thread across conversions.
+ */
+final class StreamingConversion {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingConversion.class);
+
+    /** Marker for leaf elements with no text, written as JSON null */
+    private static final Object NULL_LEAF = new Object();
+
+    /** Larger text buffers are dropped after the conversion rather than kept by the thread */
+    private static final int MAX_RETAINED_TEXT = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> TEXT_BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final XmlToJsonConverter converter;
+    private final ConversionPlan plan;
+    private final XMLStreamReader reader;
+    private final JsonGenerator generator;
+    private final MatchScoreAggregator scores;
+    private final ConversionMetrics metrics;
+    private final Projection projection;
+    private final ShapeRegistry shapes;
+    private final ConversionLimits limits;
+    private final long start;
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    // Text of the innermost open leaf, cleared whenever a frame starts a new leaf child
+    private final StringBuilder text = TEXT_BUFFER.get();
+    private boolean summaryWritten;
+    private long elementCount;
+    // Length of the text read since the last tag, checked against limits.max.text.length
+    private long textLength;
+
+    StreamingConversion(XmlToJsonConverter converter, XMLStreamReader reader, JsonGenerator generator,
+                        Projection projection) {
+        this.converter = converter;
+        this.projection = projection;
+        this.plan = converter.getPlan();
+        this.reader = reader;
+        this.generator = generator;
+        this.scores = converter.newScoreAggregator();
+        this.metrics = converter.getMetrics();
+        this.shapes = converter.getShapeRegistry();
+        this.limits = converter.getLimits();
+        this.start = metrics.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Consumes the whole document and writes the JSON output
+     */
+    void run() throws XMLStreamException, IOException, XmlToJsonConverter.XmlToJsonConverterException {
+        try {
+            convertEvents();
+        } finally {
+            text.setLength(0);
+            if (text.capacity() > MAX_RETAINED_TEXT) {
+                TEXT_BUFFER.remove();
+            }
+        }
+    }
+
+    private void convertEvents() throws XMLStreamException, IOException,
+            XmlToJsonConverter.XmlToJsonConverterException {
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    textLength += reader.getTextLength();
+                    limits.checkText(textLength);
+                    characters();
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement();
+                    break;
+                case XMLStreamConstants.DTD:
+                    throw new XmlToJsonConverter.XmlToJsonConverterException("DOCTYPE declarations are not allowed");
+                default:
+                    break;
+            }
+        }
+        generator.flush();
+    }
+
+    private void startElement() throws XMLStreamException, XmlToJsonConverter.LimitExceededException {
+        elementCount++;
+        // Checked before anything is kept for the element
+        limits.checkElement(stack.size() + 1, elementCount, reader.getAttributeCount());
+        textLength = 0;
+        // Not namespace-aware, so this is the name as written, prefix included
+        String name = reader.getLocalName();
+        Frame frame;
+        if (stack.isEmpty()) {
+            text.setLength(0);
+            // The root is always converted as an object, like convertElementToJson does
+            ConversionPlan.ElementRule rule = plan.rule(name);
+            ShapeRegistry.Node shape = shapes == null ? ShapeRegistry.Node.NONE : shapes.root(name);
+            frame = rule.handler == ConversionPlan.Handler.MATCH_LIST
+                    ? new MatchDetailsFrame(null, name, rule, true, shape)
+                    : new ElementFrame(null, name, true, false, readAttributes(), projection.root(name), shape);
+        } else {
+            frame = stack.peek().startChild(name);
+        }
+        stack.push(frame);
+    }
+
+    private void characters() {
+        if (stack.isEmpty()) {
+            return;
+        }
+        stack.peek().text();
+    }
+
+    private void endElement() throws IOException {
+        textLength = 0;
+        stack.pop().end();
+    }
+
+    /**
+     * Writes the root wrapper object once the whole document has been read
+     */
+    private void writeRoot(String name, ElementFrame frame, Object value) throws IOException {
+        // Parsing is interleaved with the element walk, both count as CONVERT
+        boolean timed = metrics.isEnabled();
+        long converted = timed ? System.nanoTime() : 0L;
+        if (timed) {
+            metrics.recordPhase(ConversionMetrics.Phase.CONVERT, converted - start);
+        }
+
+        generator.writeStartObject();
+        generator.writeFieldName(name);
+        if (frame != null) {
+            frame.writeObject(generator);
+        } else {
+            writeValue(value, generator);
+        }
+        generator.writeEndObject();
+
+        if (timed) {
+            metrics.recordPhase(ConversionMetrics.Phase.SERIALIZE, System.nanoTime() - converted);
+            metrics.recordCounts(elementCount, scores.getMatchCount());
+        }
+        // A projection may leave ResultBlock out on purpose
+        if (converter.isMatchSummaryEnabled() && !summaryWritten && projection.isAll()) {
+            logger.warn("ResultBlock not found in response. Cannot add MatchSummary.");
+        }
+    }
+
+    private void writeValue(Object value, JsonGenerator out) throws IOException {
+        if (value instanceof TokenBuffer) {
+            ((TokenBuffer) value).serialize(out);
+        } else if (value instanceof ElementFrame) {
+            ((ElementFrame) value).writeObject(out);
+        } else if (value instanceof List) {
+            out.writeStartArray();
+            for (Object item : (List<?>) value) {
+                writeValue(item, out);
+            }
+            out.writeEndArray();
+        } else {
+            // NULL_LEAF is written as null
+            LeafValues.write(out, value);
+        }
+    }
+
+    /**
+     * Value of the leaf that just closed, from the shared text buffer
+     */
+    private Object leafValue(Frame parent, String name) {
+        return LeafValues.value(text, plan.leafType(parent == null ? null : parent.name, name), NULL_LEAF);
+    }
+
+    private void appendText() {
+        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+    }
+
+    /**
+     * Text appended to the shared buffer since the given offset
+     */
+    private CharSequence textFrom(int start) {
+        return start == 0 ? text : text.subSequence(start, text.length());
+    }
+
+    private Map<String, String> readAttributes() {
+        int attributeCount = reader.getAttributeCount();
+        if (attributeCount == 0) {
+            return null;
+        }
+        // Sorted by name, the order the DOM engine's attribute maps keep them in
+        Map<String, String> attributes = new TreeMap<>();
+        // Namespace declarations are among them, as with the DOM engine's parser
+        for (int i = 0; i < attributeCount; i++) {
+            attributes.put(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i));
+        }
+        return attributes;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        if (localName == null || localName.isEmpty()) {
+            return prefix;
+        }
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * Frame for an element left out by the projection, still scoring the Matches below it
+     */
+    private Frame projectedOut(String name, ConversionPlan.ElementRule rule) {
+        if (!converter.isMatchSummaryEnabled() || rule.handler == ConversionPlan.Handler.SKIP) {
+            return new SkippedFrame(name, false);
+        }
+        return rule.handler == ConversionPlan.Handler.MATCH_LIST
+                ? new ScoringFrame(name, rule)
+                : new SkippedFrame(name, true);
+    }
+
+    /**
+     * LinkedHashMap capacity holding the expected number of entries without resizing
+     */
+    private static int mapCapacity(int expected) {
+        return expected == 0 ? 16 : (int) (expected / 0.75f) + 1;
+    }
+
+    private static TokenBuffer newBuffer() {
+        return new TokenBuffer(null, false);
+    }
+
+    /**
+     * One open XML element
+     */
+    private abstract static class Frame {
+        final String name;
+
+        Frame(String name) {
+            this.name = name;
+        }
+
+        abstract Frame startChild(String childName) throws XMLStreamException;
+
+        void text() {
+        }
+
+        abstract void end() throws IOException;
+    }
+
+    /**
+     * Generic element: a leaf value, or an object of its children followed by its attributes
+     */
+    private final class ElementFrame extends Frame {
+        private final ElementFrame parent;
+        // Array members and the root are always objects, even without child elements
+        private final boolean member;
+        // Occurrence of an element declared as an array
+        private final boolean arrayItem;
+        // ResultBlock below the root, or the root itself: MatchSummary is written first, once the
+        // scores are final, unless ResultBlock repeats and becomes an array
+        private boolean summarySlot;
+        private final Map<String, String> attributes;
+        private final Projection.State selection;
+        private final ShapeRegistry.Node shape;
+        // Leaf value, NULL_LEAF, TokenBuffer, or List<TokenBuffer> for repeated siblings
+        private Map<String, Object> fields;
+        // Converted children by name, counted while the shape registry is learning
+        private Map<String, Integer> occurrences;
+
+        ElementFrame(ElementFrame parent, String name, boolean member, boolean arrayItem,
+                     Map<String, String> attributes, Projection.State selection, ShapeRegistry.Node shape) {
+            super(name);
+            this.parent = parent;
+            this.member = member;
+            this.arrayItem = arrayItem;
+            this.attributes = attributes;
+            this.selection = selection;
+            this.shape = shape;
+            this.summarySlot = converter.isMatchSummaryEnabled() && "ResultBlock".equals(name)
+                    && (parent == null || parent.parent == null && !"ResultBlock".equals(parent.name)
+                    && !member && !arrayItem);
+        }
+
+        @Override
+        Frame startChild(String childName) {
+            text.setLength(0);
+            if (fields == null) {
+                fields = new LinkedHashMap<>(mapCapacity(shape.expectedFields()));
+            }
+            ConversionPlan.ElementRule rule = plan.rule(childName);
+            if (rule.handler == ConversionPlan.Handler.SKIP) {
+                return new SkippedFrame(childName, false);
+            }
+            Projection.State childSelection = selection.child(childName);
+            if (childSelection == null) {
+                return projectedOut(childName, rule);
+            }
+            if (shape.isLearning()) {
+                if (occurrences == null) {
+                    occurrences = new HashMap<>();
+                }
+                occurrences.merge(childName, 1, Integer::sum);
+            }
+            ShapeRegistry.Node childShape = shape.child(childName);
+            switch (rule.handler) {
+                case ARRAY:
+                    return new ElementFrame(this, childName, false, true, readAttributes(), childSelection, childShape);
+                case MATCH_LIST:
+                    return new MatchDetailsFrame(this, childName, rule, fields.containsKey(childName), childShape);
+                case VALUE_LIST:
+                    if (!fields.containsKey(childName)) {
+                        return new ValuesFrame(this, childName, rule, childShape);
+                    }
+                    break;
+                default:
+                    if (childShape.isArray()) {
+                        // Known to repeat at this path, emitted as an array from the first occurrence
+                        return new ElementFrame(this, childName, false, true, readAttributes(), childSelection,
+                                childShape);
+                    }
+                    break;
+            }
+            return new ElementFrame(this, childName, fields.containsKey(childName), false, readAttributes(),
+                    childSelection, childShape);
+        }
+
+        @Override
+        void text() {
+            if (fields == null && !member) {
+                appendText();
+            }
+        }
+
+        void addArrayItem(String childName, Object value, ShapeRegistry.Node childShape) {
+            Object existing = fields.get(childName);
+            if (existing instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<Object> items = (List<Object>) existing;
+                items.add(value);
+            } else {
+                List<Object> items = new ArrayList<>(Math.max(childShape.expectedItems(), 10));
+                items.add(value);
+                fields.put(childName, items);
+            }
+        }
+
+        void addChild(String childName, Object value) {
+            Object existing = fields.get(childName);
+            if (existing == null) {
+                fields.put(childName, value);
+            } else if (existing instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<Object> items = (List<Object>) existing;
+                items.add(value);
+            } else {
+                // A leaf that turns out to repeat is dropped, only objects are kept in the array
+                List<Object> items = new ArrayList<>();
+                if (existing instanceof ElementFrame) {
+                    // A repeated ResultBlock is an array, which has no place for MatchSummary
+                    ((ElementFrame) existing).summarySlot = false;
+                    items.add(existing);
+                } else if (existing instanceof TokenBuffer) {
+                    items.add(existing);
+                }
+                items.add(value);
+                fields.put(childName, items);
+            }
+        }
+
+        @Override
+        void end() throws IOException {
+            if (fields != null && shape.isLearning()) {
+                recordShape();
+            }
+            if (parent == null) {
+                writeRoot(name, this, null);
+            } else if (fields == null && !member) {
+                if (arrayItem) {
+                    parent.addArrayItem(name, leafValue(parent, name), shape);
+                } else {
+                    parent.addChild(name, leafValue(parent, name));
+                }
+            } else if (summarySlot) {
+                // Kept as a frame and written by the root, after the last Match has been scored
+                parent.addChild(name, this);
+            } else if (arrayItem) {
+                TokenBuffer buffer = newBuffer();
+                writeObject(buffer);
+                parent.addArrayItem(name, buffer, shape);
+            } else {
+                TokenBuffer buffer = newBuffer();
+                writeObject(buffer);
+                parent.addChild(name, buffer);
+            }
+        }
+
+        private void recordShape() {
+            shape.recordFields(fields.size());
+            if (occurrences != null) {
+                shape.recordChildren(occurrences);
+            }
+        }
+
+        void writeObject(JsonGenerator out) throws IOException {
+            Map<String, String> pendingAttributes = attributes == null ? null : new LinkedHashMap<>(attributes);
+
+            out.writeStartObject();
+            if (summarySlot) {
+                out.writeObjectFieldStart("MatchSummary");
+                scores.writeSummary(out, plan);
+                out.writeEndObject();
+                summaryWritten = true;
+            }
+            if (fields != null) {
+                for (Map.Entry<String, Object> field : fields.entrySet()) {
+                    String fieldName = field.getKey();
+                    if (summarySlot && "MatchSummary".equals(fieldName)) {
+                        continue;
+                    }
+                    out.writeFieldName(fieldName);
+
+                    // An attribute with the same name replaces the element value in place
+                    String attribute = pendingAttributes == null ? null : pendingAttributes.remove(fieldName);
+                    if (attribute != null) {
+                        out.writeString(attribute);
+                    } else {
+                        writeValue(field.getValue(), out);
+                    }
+                }
+            }
+            if (pendingAttributes != null) {
+                for (Map.Entry<String, String> attribute : pendingAttributes.entrySet()) {
+                    out.writeStringField(attribute.getKey(), attribute.getValue());
+                }
+            }
+            out.writeEndObject();
+        }
+    }
+
+    /**
+     * MatchDetails element (match-list rule), written as {"MatchDetails": [{"Match": {...}}, ...]}
+     */
+    private final class MatchDetailsFrame extends Frame implements ItemCollector {
+        private final ElementFrame parent;
+        private final ConversionPlan.ElementRule rule;
+        private final boolean member;
+        private final ShapeRegistry.Node shape;
+        // Started Matches not written yet; a Match nested in another one ends first but comes after it
+        private final Deque<MatchFrame> unwritten = new ArrayDeque<>();
+        private TokenBuffer buffer;
+        private int matchCount;
+
+        MatchDetailsFrame(ElementFrame parent, String name, ConversionPlan.ElementRule rule, boolean member,
+                          ShapeRegistry.Node shape) {
+            super(name);
+            this.parent = parent;
+            this.rule = rule;
+            this.member = member;
+            this.shape = shape;
+        }
+
+        @Override
+        Frame startChild(String childName) throws XMLStreamException {
+            text.setLength(0);
+            openBuffer();
+            if (rule.childName.equals(childName)) {
+                return startMatch(childName, null, -1);
+            }
+            // Match elements are looked up at any depth, as getElementsByTagName does, unless
+            // the path is declared to hold them as direct children
+            return shape.isDirectOnly() ? new SkippedFrame(childName, false) : new TransparentFrame(this, childName);
+        }
+
+        @Override
+        public Frame startNestedItem(String childName, TextSink enclosing) {
+            if (shape.isDirectOnly() || !rule.childName.equals(childName)) {
+                return null;
+            }
+            return startMatch(childName, enclosing, text.length());
+        }
+
+        private MatchFrame startMatch(String childName, TextSink enclosing, int start) {
+            MatchFrame match = new MatchFrame(this, childName, matchCount++, enclosing, start);
+            unwritten.add(match);
+            return match;
+        }
+
+        private void openBuffer() throws XMLStreamException {
+            if (buffer == null) {
+                buffer = newBuffer();
+                try {
+                    buffer.writeStartObject();
+                    buffer.writeFieldName(name);
+                    buffer.writeStartArray();
+                } catch (IOException e) {
+                    throw new XMLStreamException(e);
+                }
+            }
+        }
+
+        @Override
+        void text() {
+            if (buffer == null && !member) {
+                appendText();
+            }
+        }
+
+        /**
+         * Writes the ended Matches that are next in document order
+         */
+        void matchEnded() throws IOException {
+            while (!unwritten.isEmpty() && unwritten.peek().ended) {
+                addMatch(unwritten.poll().fields);
+            }
+        }
+
+        private void addMatch(Map<String, Object> fields) throws IOException {
+            buffer.writeStartObject();
+            buffer.writeObjectFieldStart(rule.childName);
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                buffer.writeFieldName(field.getKey());
+                LeafValues.write(buffer, field.getValue());
+            }
+            buffer.writeEndObject();
+            buffer.writeEndObject();
+        }
+
+        @Override
+        void end() throws IOException {
+            Object value;
+            if (buffer == null && !member) {
+                value = leafValue(parent, name);
+            } else {
+                try {
+                    openBuffer();
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                }
+                buffer.writeEndArray();
+                buffer.writeEndObject();
+                value = buffer;
+            }
+
+            if (parent == null) {
+                writeRoot(name, null, value);
+            } else {
+                parent.addChild(name, value);
+            }
+        }
+    }
+
+    /**
+     * Single Match entry; every child element becomes a field with its full text content. A Match
+     * nested in another one is an entry of its own as well as text of the enclosing Match.
+     */
+    private final class MatchFrame extends Frame implements TextSink {
+        private final MatchDetailsFrame owner;
+        private final int index;
+        // Match taking this one's text as a field, when nested directly in it
+        private final TextSink enclosing;
+        // Offset of this Match's text in the shared buffer when nested in another Match, otherwise -1
+        private final int start;
+        private final Map<String, Object> fields = new LinkedHashMap<>();
+        private boolean ended;
+
+        MatchFrame(MatchDetailsFrame owner, String name, int index, TextSink enclosing, int start) {
+            super(name);
+            this.owner = owner;
+            this.index = index;
+            this.enclosing = enclosing;
+            this.start = start;
+            scores.countMatch();
+        }
+
+        @Override
+        Frame startChild(String childName) {
+            Frame nested = owner.startNestedItem(childName, this);
+            if (nested != null) {
+                return nested;
+            }
+            if (start < 0) {
+                // Nothing enclosing needs the text read so far
+                text.setLength(0);
+            }
+            return new TextFrame(this, childName, owner, text.length());
+        }
+
+        @Override
+        void text() {
+            if (start >= 0) {
+                appendText();
+            }
+        }
+
+        @Override
+        public void acceptText(String fieldName, CharSequence content) {
+            ConversionPlan.LeafType type = plan.leafType(name, fieldName);
+            Object value;
+            if (plan.isScore(fieldName)) {
+                String score = plan.score((String) LeafValues.value(content, ConversionPlan.LeafType.STRING, ""), index);
+                if (converter.isMatchSummaryEnabled()) {
+                    scores.add(score);
+                }
+                value = LeafValues.value(score, type, "");
+            } else {
+                value = LeafValues.value(content, type, "");
+            }
+            fields.put(owner.rule.fieldKey(fieldName), value);
+        }
+
+        @Override
+        void end() throws IOException {
+            ended = true;
+            if (enclosing != null) {
+                enclosing.acceptText(name, textFrom(start));
+            }
+            owner.matchEnded();
+        }
+    }
+
+    /**
+     * Values element (value-list rule), collapsing its Value descendants into a single value or an array
+     */
+    private final class ValuesFrame extends Frame implements ItemCollector {
+        private final ElementFrame parent;
+        private final ConversionPlan.ElementRule rule;
+        private final ShapeRegistry.Node shape;
+        // One slot per Value in document order, filled when the Value ends
+        private final List<Object> values;
+
+        ValuesFrame(ElementFrame parent, String name, ConversionPlan.ElementRule rule, ShapeRegistry.Node shape) {
+            super(name);
+            this.parent = parent;
+            this.rule = rule;
+            this.shape = shape;
+            this.values = new ArrayList<>(Math.max(shape.child(rule.childName).expectedItems(), 10));
+        }
+
+        @Override
+        Frame startChild(String childName) {
+            if (rule.childName.equals(childName)) {
+                text.setLength(0);
+                return startValue(childName, 0);
+            }
+            return shape.isDirectOnly() ? new SkippedFrame(childName, false) : new TransparentFrame(this, childName);
+        }
+
+        @Override
+        public Frame startNestedItem(String childName, TextSink enclosing) {
+            if (shape.isDirectOnly() || !rule.childName.equals(childName)) {
+                return null;
+            }
+            return startValue(childName, text.length());
+        }
+
+        private Frame startValue(String childName, int start) {
+            values.add(null);
+            return new ValueFrame(this, childName, values.size() - 1, start);
+        }
+
+        void setValue(int slot, String valueName, CharSequence content) {
+            values.set(slot, LeafValues.value(content, plan.leafType(name, valueName), ""));
+        }
+
+        @Override
+        void end() throws IOException {
+            if (shape.isLearning() && values.size() > 1) {
+                shape.child(rule.childName).recordItems(values.size());
+            }
+            TokenBuffer buffer = newBuffer();
+            buffer.writeStartObject();
+            if (values.size() > 1) {
+                buffer.writeArrayFieldStart(rule.childName);
+                for (Object value : values) {
+                    LeafValues.write(buffer, value);
+                }
+                buffer.writeEndArray();
+            } else if (values.size() == 1) {
+                buffer.writeFieldName(rule.childName);
+                LeafValues.write(buffer, values.get(0));
+            }
+            buffer.writeEndObject();
+            parent.addChild(name, buffer);
+        }
+    }
+
+    /**
+     * Single Value item, whose value is its full text content, including that of Values nested in it
+     */
+    private final class ValueFrame extends Frame {
+        private final ValuesFrame owner;
+        private final int slot;
+        // Offset of this Value's text in the shared buffer
+        private final int start;
+
+        ValueFrame(ValuesFrame owner, String name, int slot, int start) {
+            super(name);
+            this.owner = owner;
+            this.slot = slot;
+            this.start = start;
+        }
+
+        @Override
+        Frame startChild(String childName) {
+            Frame nested = owner.startNestedItem(childName, null);
+            return nested != null ? nested : new TextFrame(null, childName, owner, 0);
+        }
+
+        @Override
+        void text() {
+            appendText();
+        }
+
+        @Override
+        void end() {
+            owner.setValue(slot, name, textFrom(start));
+        }
+    }
+
+    /**
+     * Collects the text content of an element and all its descendants into the shared buffer
+     */
+    private final class TextFrame extends Frame {
+        private final TextSink sink;
+        // Frame collecting the Match or Value items that may be nested in this element, or null
+        private final ItemCollector items;
+        // Offset of this element's text in the shared buffer
+        private final int start;
+
+        TextFrame(TextSink sink, String name, ItemCollector items, int start) {
+            super(name);
+            this.sink = sink;
+            this.items = items;
+            this.start = start;
+        }
+
+        @Override
+        Frame startChild(String childName) {
+            Frame nested = items == null ? null : items.startNestedItem(childName, null);
+            // Descendants keep appending, the text content spans all of them
+            return nested != null ? nested : new TextFrame(null, childName, items, 0);
+        }
+
+        @Override
+        void text() {
+            appendText();
+        }
+
+        @Override
+        void end() {
+            if (sink != null) {
+                sink.acceptText(name, textFrom(start));
+            }
+        }
+    }
+
+    /**
+     * Element that is not part of the output, whose children are offered to an enclosing frame
+     */
+    private static final class TransparentFrame extends Frame {
+        private final Frame owner;
+
+        TransparentFrame(Frame owner, String name) {
+            super(name);
+            this.owner = owner;
+        }
+
+        @Override
+        Frame startChild(String childName) throws XMLStreamException {
+            return owner.startChild(childName);
+        }
+
+        @Override
+        void end() {
+        }
+    }
+
+    /**
+     * Element left out of the output, together with everything below it
+     */
+    private final class SkippedFrame extends Frame {
+        // Left out by a projection: Match scores below still count towards MatchSummary
+        private final boolean scoring;
+
+        SkippedFrame(String name, boolean scoring) {
+            super(name);
+            this.scoring = scoring;
+        }
+
+        @Override
+        Frame startChild(String childName) {
+            if (scoring) {
+                ConversionPlan.ElementRule rule = plan.rule(childName);
+                if (rule.handler != ConversionPlan.Handler.GENERIC) {
+                    return projectedOut(childName, rule);
+                }
+            }
+            // Descendants share the frame, nothing is kept for them
+            return this;
+        }
+
+        @Override
+        void end() {
+        }
+    }
+
+    /**
+     * MatchDetails element left out by a projection, only feeding the scores of the Match elements
+     * at any depth below it to the aggregator
+     */
+    private final class ScoringFrame extends Frame implements ItemCollector {
+        private final ConversionPlan.ElementRule rule;
+        private int matchCount;
+
+        ScoringFrame(String name, ConversionPlan.ElementRule rule) {
+            super(name);
+            this.rule = rule;
+        }
+
+        @Override
+        Frame startChild(String childName) {
+            if (rule.childName.equals(childName)) {
+                return new MatchScoringFrame(this, childName, matchCount++, -1);
+            }
+            return this;
+        }
+
+        @Override
+        public Frame startNestedItem(String childName, TextSink enclosing) {
+            return rule.childName.equals(childName)
+                    ? new MatchScoringFrame(this, childName, matchCount++, text.length())
+                    : null;
+        }
+
+        @Override
+        void end() {
+        }
+    }
+
+    /**
+     * Match element left out by a projection, of which only the Score text is read
+     */
+    private final class MatchScoringFrame extends Frame implements TextSink {
+        private final ScoringFrame owner;
+        private final int index;
+        // Offset of this Match's text in the shared buffer when nested in a Score, otherwise -1
+        private final int start;
+
+        MatchScoringFrame(ScoringFrame owner, String name, int index, int start) {
+            super(name);
+            this.owner = owner;
+            this.index = index;
+            this.start = start;
+            scores.countMatch();
+        }
+
+        @Override
+        Frame startChild(String childName) {
+            if (owner.rule.childName.equals(childName)) {
+                return owner.startChild(childName);
+            }
+            if (plan.isScore(childName)) {
+                if (start < 0) {
+                    text.setLength(0);
+                }
+                return new TextFrame(this, childName, owner, text.length());
+            }
+            // Keeps the text of an enclosing Score whole, otherwise only looks for nested Matches
+            return start < 0 ? owner : new TextFrame(null, childName, owner, 0);
+        }
+
+        @Override
+        void text() {
+            if (start >= 0) {
+                appendText();
+            }
+        }
+
+        @Override
+        public void acceptText(String fieldName, CharSequence content) {
+            scores.add(plan.score((String) LeafValues.value(content, ConversionPlan.LeafType.STRING, ""), index));
+        }
+
+        @Override
+        void end() {
+        }
+    }
+
+    private interface TextSink {
+        void acceptText(String fieldName, CharSequence content);
+    }
+
+    /**
+     * Match-list or value-list frame, whose items are also looked for inside other items
+     */
+    private interface ItemCollector {
+        /**
+         * Starts an item found inside another item, as text of the enclosing sink if not null, or
+         * returns null when the element is not an item here
+         */
+        Frame startNestedItem(String childName, TextSink enclosing);
+    }
+}
@@ -0,0 +1,199 @@
+package org.example.converter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe pool of XML parsers for one converter.
+ *
+ * The DocumentBuilderFactory is looked up and configured once per JVM. DocumentBuilders are
+ * reset and kept for reuse, and so are XMLInputFactory instances, which on the JDK parser reset
+ * and reuse their last XMLStreamReader once it has been closed. A borrow that finds no idle
+ * parser creates a new one (a miss); parsers returned to a full pool are dropped.
+ */
+public final class XmlParserPool {
+    private static final Logger logger = LoggerFactory.getLogger(XmlParserPool.class);
+
+    private static final String DISALLOW_DOCTYPE_FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
+    // JDK StAX property that lets a factory reset and hand out its last reader again after close()
+    private static final String REUSE_INSTANCE_PROPERTY = "reuse-instance";
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = createDocumentBuilderFactory();
+
+    private final int capacity;
+    private final Queue<DocumentBuilder> documentBuilders = new ConcurrentLinkedQueue<>();
+    private final Queue<XMLInputFactory> inputFactories = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleDocumentBuilders = new AtomicInteger();
+    private final AtomicInteger idleInputFactories = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a pool keeping at most {@code capacity} idle parsers of each kind
+     */
+    public XmlParserPool(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Parser pool capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        try {
+            // For security reasons, disable DTDs
+            factory.setFeature(DISALLOW_DOCTYPE_FEATURE, true);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("XML parser does not support disabling DOCTYPE declarations", e);
+        }
+        return factory;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Like the DOM parser: prefixed names are kept as written, xmlns declarations are plain attributes
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        if (factory.isPropertySupported(REUSE_INSTANCE_PROPERTY)) {
+            factory.setProperty(REUSE_INSTANCE_PROPERTY, true);
+        }
+        return factory;
+    }
+
+    /**
+     * Borrows a DocumentBuilder, which must be handed back with {@link #release(DocumentBuilder)}
+     */
+    DocumentBuilder borrowDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = documentBuilders.poll();
+        if (builder != null) {
+            idleDocumentBuilders.decrementAndGet();
+            hits.increment();
+            return builder;
+        }
+        misses.increment();
+        // DocumentBuilderFactory is not guaranteed to be thread-safe
+        synchronized (DOCUMENT_BUILDER_FACTORY) {
+            return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+        }
+    }
+
+    void release(DocumentBuilder builder) {
+        try {
+            builder.reset();
+        } catch (UnsupportedOperationException e) {
+            logger.debug("DocumentBuilder does not support reset, not pooling it");
+            return;
+        }
+        if (idleDocumentBuilders.incrementAndGet() <= capacity) {
+            documentBuilders.offer(builder);
+        } else {
+            idleDocumentBuilders.decrementAndGet();
+        }
+    }
+
+    /**
+     * Creates a stream reader over the source, with DTDs disabled. Closing the reader returns its
+     * factory to the pool.
+     */
+    public XMLStreamReader createStreamReader(InputSource source) throws XMLStreamException {
+        XMLInputFactory factory = inputFactories.poll();
+        if (factory != null) {
+            idleInputFactories.decrementAndGet();
+            hits.increment();
+        } else {
+            misses.increment();
+            factory = createInputFactory();
+        }
+
+        XMLStreamReader reader;
+        try {
+            if (source.getCharacterStream() != null) {
+                reader = factory.createXMLStreamReader(source.getCharacterStream());
+            } else if (source.getEncoding() != null) {
+                reader = factory.createXMLStreamReader(source.getByteStream(), source.getEncoding());
+            } else {
+                reader = factory.createXMLStreamReader(source.getByteStream());
+            }
+        } catch (XMLStreamException | RuntimeException e) {
+            release(factory);
+            throw e;
+        }
+        return new PooledStreamReader(reader, factory);
+    }
+
+    private void release(XMLInputFactory factory) {
+        if (idleInputFactories.incrementAndGet() <= capacity) {
+            inputFactories.offer(factory);
+        } else {
+            idleInputFactories.decrementAndGet();
+        }
+    }
+
+    /**
+     * Maximum number of idle parsers kept of each kind
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of idle parsers currently pooled, of both kinds
+     */
+    public int getIdleCount() {
+        return idleDocumentBuilders.get() + idleInputFactories.get();
+    }
+
+    /**
+     * Number of borrows served by a pooled parser
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of borrows that had to create a new parser
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Reader that returns its factory to the pool when closed, so the factory can reuse it
+     */
+    private final class PooledStreamReader extends StreamReaderDelegate {
+        private final XMLInputFactory factory;
+        private boolean closed;
+
+        PooledStreamReader(XMLStreamReader reader, XMLInputFactory factory) {
+            super(reader);
+            this.factory = factory;
+        }
+
+        @Override
+        public void close() throws XMLStreamException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                release(factory);
+            }
+        }
+    }
+}
@@ -1,69 +1,112 @@
 package org.example.converter;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.metrics.ConversionMetrics;
+import org.example.metrics.HistogramMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 public class XmlToJsonConverter {
     private static final Logger logger = LoggerFactory.getLogger(XmlToJsonConverter.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
 
     private final Properties config;
-    private final int maxIntValue;
-    private final long maxLongValue;
-    private final String scoreDataType;
+    private final MatchScoreAggregator.Settings scoreSettings;
     private final boolean matchSummaryEnabled;
-    private final Map<String, String> fieldMappings;
+    private final ConversionPlan plan;
+    private final boolean streamingEngine;
+    private final XmlParserPool parserPool;
+    private final OutputFormat outputFormat;
+    private final boolean prettyPrint;
+    private final String configFingerprint;
+    private final ConversionMetrics metrics;
+    private final long slowConversionNanos;
+    private final Projection projection;
+    private final ShapeRegistry shapes;
+    private final ConversionLimits limits;
 
     /**
      * Constructor that loads configuration from default properties file
      */
     public XmlToJsonConverter() {
-        this.config = loadProperties();
-        this.maxIntValue = Integer.parseInt(config.getProperty("converter.max.int.value", String.valueOf(Integer.MAX_VALUE)));
-        this.maxLongValue = Long.parseLong(config.getProperty("converter.max.long.value", String.valueOf(Long.MAX_VALUE)));
-        this.scoreDataType = config.getProperty("converter.score.data.type", "integer");
-        this.matchSummaryEnabled = Boolean.parseBoolean(config.getProperty("feature.match.summary.enabled", "true"));
-        this.fieldMappings = loadFieldMappings();
+        this(loadProperties());
     }
 
     /**
      * Constructor with explicit configuration
      */
     public XmlToJsonConverter(Properties config) {
+        this(config, createMetrics(config));
+    }
+
+    /**
+     * Constructor with explicit configuration reporting to the given metrics implementation
+     */
+    public XmlToJsonConverter(Properties config, ConversionMetrics metrics) {
         this.config = config;
-        this.maxIntValue = Integer.parseInt(config.getProperty("converter.max.int.value", String.valueOf(Integer.MAX_VALUE)));
-        this.maxLongValue = Long.parseLong(config.getProperty("converter.max.long.value", String.valueOf(Long.MAX_VALUE)));
-        this.scoreDataType = config.getProperty("converter.score.data.type", "integer");
+        this.scoreSettings = new MatchScoreAggregator.Settings(
+                config.getProperty("converter.score.data.type", "integer"),
+                Integer.parseInt(config.getProperty("converter.max.int.value", String.valueOf(Integer.MAX_VALUE))),
+                Long.parseLong(config.getProperty("converter.max.long.value", String.valueOf(Long.MAX_VALUE))),
+                config.getProperty("match.score.min"),
+                config.getProperty("match.score.max"),
+                Boolean.parseBoolean(config.getProperty("feature.match.summary.aggregates.enabled", "false")));
         this.matchSummaryEnabled = Boolean.parseBoolean(config.getProperty("feature.match.summary.enabled", "true"));
-        this.fieldMappings = loadFieldMappings();
+        this.plan = ConversionPlan.compile(config);
+        this.streamingEngine = !"dom".equalsIgnoreCase(config.getProperty("converter.engine", "streaming"));
+        this.parserPool = new XmlParserPool(Integer.parseInt(config.getProperty("parser.pool.size",
+                String.valueOf(Runtime.getRuntime().availableProcessors() * 2))));
+        this.outputFormat = OutputFormat.of(config.getProperty("output.format", "json"));
+        this.prettyPrint = Boolean.parseBoolean(config.getProperty("output.pretty", "false"));
+        this.configFingerprint = fingerprint(config);
+        this.metrics = metrics;
+        this.slowConversionNanos = slowConversionNanos(config);
+        this.projection = Projection.parse(config.getProperty("projection.include"),
+                config.getProperty("projection.exclude"));
+        this.shapes = ShapeRegistry.fromConfig(config);
+        this.limits = ConversionLimits.fromConfig(config);
     }
 
     /**
-     * Loads properties from application.properties file
+     * Loads properties from the application.properties file on the classpath
      */
-    private Properties loadProperties() {
+    public static Properties loadProperties() {
         Properties props = new Properties();
-        try (InputStream input = getClass().getClassLoader().getResourceAsStream("application.properties")) {
+        try (InputStream input = XmlToJsonConverter.class.getClassLoader().getResourceAsStream("application.properties")) {
             if (input != null) {
                 props.load(input);
                 logger.debug("Loaded configuration from application.properties");
@@ -77,165 +120,628 @@ public class XmlToJsonConverter {
     }
 
     /**
-     * Loads field mappings for customizing output
+     * Shared in-process metrics when metrics.enabled is set, otherwise no-op
      */
-    private Map<String, String> loadFieldMappings() {
-        Map<String, String> mappings = new HashMap<>();
-        for (String key : config.stringPropertyNames()) {
-            if (key.startsWith("field.mapping.")) {
-                String fieldName = key.substring("field.mapping.".length());
-                mappings.put(fieldName, config.getProperty(key));
+    private static ConversionMetrics createMetrics(Properties config) {
+        return Boolean.parseBoolean(config.getProperty("metrics.enabled", "false"))
+                ? HistogramMetrics.getDefault()
+                : ConversionMetrics.NOOP;
+    }
+
+    private static long slowConversionNanos(Properties config) {
+        return TimeUnit.MILLISECONDS.toNanos(Long.parseLong(config.getProperty("metrics.slow.conversion.ms", "0")));
+    }
+
+    /**
+     * Hex SHA-256 of all configuration entries in key order, each key and value prefixed with its
+     * length, so results of differently configured converters can be told apart
+     */
+    private static String fingerprint(Properties config) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        for (String key : new TreeSet<>(config.stringPropertyNames())) {
+            for (String part : new String[] {key, config.getProperty(key)}) {
+                byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                digest.update((bytes.length + ":").getBytes(StandardCharsets.US_ASCII));
+                digest.update(bytes);
             }
         }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Converts XML string to JSON string and adds custom TotalMatchScore field.
+     * The result is always JSON, pretty-printed when output.pretty is set.
+     */
+    public String convertXmlToJson(String xmlString) throws XmlToJsonConverterException {
+        return convertXmlToJson(xmlString, projection);
+    }
 
-        // Default mappings if needed
-        if (!mappings.containsKey("MatchDetails.Score")) {
-            mappings.put("MatchDetails.Score", "Score");
+    /**
+     * Converts only the parts of the XML string selected by the projection, instead of the
+     * configured one, to JSON
+     */
+    public String convertXmlToJson(String xmlString, Projection projection) throws XmlToJsonConverterException {
+        checkLength(xmlString);
+        StringWriter writer = new StringWriter(xmlString.length());
+        try (JsonGenerator generator = createGenerator(writer)) {
+            convert(new InputSource(new StringReader(xmlString)), generator, projection);
+        } catch (IOException e) {
+            throw new XmlToJsonConverterException("Failed to write JSON output", e);
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordSizes(xmlString.length(), writer.getBuffer().length());
         }
+        return writer.toString();
+    }
 
-        return mappings;
+    /**
+     * Converts XML read from a byte stream and writes it in the configured output format (UTF-8 JSON
+     * by default) to the output stream. The input encoding is detected from the BOM or XML declaration.
+     * Neither stream is closed.
+     */
+    public void convertXmlToJson(InputStream xmlInput, OutputStream jsonOutput) throws XmlToJsonConverterException {
+        convertXmlToJson(xmlInput, null, jsonOutput);
     }
 
     /**
-     * Converts XML string to JSON string and adds custom TotalMatchScore field
+     * Converts XML read from a byte stream in the given encoding (e.g. from a Content-Type header),
+     * or detected from the document when null, and writes it in the configured output format
      */
-    public String convertXmlToJson(String xmlString) throws XmlToJsonConverterException {
-        try {
-            logger.debug("Starting XML to JSON conversion");
+    public void convertXmlToJson(InputStream xmlInput, String encoding, OutputStream jsonOutput)
+            throws XmlToJsonConverterException {
+        convertXml(xmlInput, encoding, jsonOutput, outputFormat);
+    }
+
+    /**
+     * Converts XML read from a byte stream and writes it in the given output format. Pretty printing
+     * only applies to JSON. Neither stream is closed.
+     */
+    public void convertXml(InputStream xmlInput, String encoding, OutputStream output, OutputFormat format)
+            throws XmlToJsonConverterException {
+        convertXml(xmlInput, encoding, output, format, projection);
+    }
+
+    /**
+     * Converts only the parts of the XML selected by the projection, instead of the configured one,
+     * and writes them in the given output format. Neither stream is closed.
+     */
+    public void convertXml(InputStream xmlInput, String encoding, OutputStream output, OutputFormat format,
+                           Projection projection) throws XmlToJsonConverterException {
+        CountingStreams.Input countingInput = countingInput(xmlInput);
+        CountingStreams.Output countingOutput = null;
+        if (metrics.isEnabled()) {
+            output = countingOutput = new CountingStreams.Output(output);
+        }
+        InputSource source = new InputSource(countingInput != null ? countingInput : xmlInput);
+        source.setEncoding(encoding);
+        try (JsonGenerator generator = createGenerator(output, format)) {
+            convert(source, generator, projection);
+        } catch (IOException e) {
+            throw new XmlToJsonConverterException("Failed to write " + format + " output", e);
+        }
+        if (countingOutput != null) {
+            metrics.recordSizes(countingInput.getCount(), countingOutput.getCount());
+        }
+    }
+
+    /**
+     * Converts XML string to the given output format, e.g. Smile or CBOR for binary consumers
+     */
+    public byte[] convertXml(String xmlString, OutputFormat format) throws XmlToJsonConverterException {
+        checkLength(xmlString);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(xmlString.length());
+        try (JsonGenerator generator = createGenerator(output, format)) {
+            convert(new InputSource(new StringReader(xmlString)), generator, projection);
+        } catch (IOException e) {
+            throw new XmlToJsonConverterException("Failed to write " + format + " output", e);
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordSizes(xmlString.length(), output.size());
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Converts one XML record to compact UTF-8 JSON without a line terminator, for NDJSON output.
+     * The stream is not closed.
+     */
+    public byte[] convertXmlToJsonLine(InputStream xmlInput) throws XmlToJsonConverterException {
+        CountingStreams.Input countingInput = countingInput(xmlInput);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonGenerator generator = OutputFormat.JSON.factory().createGenerator(output, JsonEncoding.UTF8)) {
+            // Each record must stay on one line whatever output.pretty says
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            convert(new InputSource(countingInput != null ? countingInput : xmlInput), generator, projection);
+        } catch (IOException e) {
+            throw new XmlToJsonConverterException("Failed to write JSON output", e);
+        }
+        if (metrics.isEnabled()) {
+            metrics.recordSizes(countingInput.getCount(), output.size());
+        }
+        return output.toByteArray();
+    }
 
-            // Parse XML
-            Document document = parseXmlString(xmlString);
+    /**
+     * Byte input counted for the metrics and cut off at the byte limit, or null when neither applies
+     */
+    private CountingStreams.Input countingInput(InputStream xmlInput) {
+        return metrics.isEnabled() || limits.getMaxBytes() > 0
+                ? new CountingStreams.Input(xmlInput, limits.getMaxBytes())
+                : null;
+    }
 
-            // Convert to JSON
-            ObjectNode rootNode = objectMapper.createObjectNode();
-            Element rootElement = document.getDocumentElement();
+    /**
+     * Rejects String input over the byte limit before parsing any of it
+     */
+    private void checkLength(String xmlString) throws LimitExceededException {
+        try {
+            limits.checkChars(xmlString.length());
+        } catch (LimitExceededException e) {
+            metrics.recordError(e);
+            throw e;
+        }
+    }
 
-            // Create Response object
-            ObjectNode responseNode = objectMapper.createObjectNode();
-            rootNode.set(rootElement.getNodeName(), responseNode);
+    private JsonGenerator createGenerator(Writer writer) throws IOException {
+        return configureGenerator(OutputFormat.JSON.factory().createGenerator(writer));
+    }
 
-            // Process all child elements
-            convertElementToJson(rootElement, responseNode);
+    private JsonGenerator createGenerator(OutputStream output, OutputFormat format) throws IOException {
+        return configureGenerator(format.factory().createGenerator(output, JsonEncoding.UTF8));
+    }
 
-            // Calculate total match score
-            int totalScore = calculateTotalMatchScore(document);
+    private JsonGenerator configureGenerator(JsonGenerator generator) {
+        // The caller owns the target, closing the generator only flushes it
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Binary generators ignore pretty printers
+        return prettyPrint ? generator.useDefaultPrettyPrinter() : generator;
+    }
 
-            // Add the custom MatchSummary field with TotalMatchScore
-            if (matchSummaryEnabled) {
-                addMatchSummaryField(responseNode, totalScore);
-            }
+    /**
+     * Converts the XML source with the configured engine and writes the JSON to the generator
+     */
+    private void convert(InputSource source, JsonGenerator generator, Projection projection)
+            throws XmlToJsonConverterException {
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0L;
+        boolean learning = shapes != null && shapes.isLearning();
+        try {
+            logger.debug("Starting XML to JSON conversion");
 
-            // Convert to JSON string with pretty printing
-            String jsonString = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(rootNode);
-            logger.info("XML to JSON conversion completed successfully");
+            if (streamingEngine) {
+                // Stream XML events to the generator, the output is buffered as tokens until the root closes
+                XMLStreamReader reader = createStreamReader(source);
+                try {
+                    new StreamingConversion(this, reader, generator, projection).run();
+                } finally {
+                    reader.close();
+                }
+            } else {
+                // Parse XML, the tree is checked against the limits while it is converted
+                Document document = parseXml(source);
+                long parsed = timed ? System.nanoTime() : 0L;
+                if (timed) {
+                    metrics.recordPhase(ConversionMetrics.Phase.PARSE, parsed - start);
+                }
 
-            return jsonString;
+                // Convert to JSON and write it
+                ObjectNode tree = convertDocument(document, projection);
+                long converted = timed ? System.nanoTime() : 0L;
+                writeTree(generator, tree);
+                if (timed) {
+                    metrics.recordPhase(ConversionMetrics.Phase.SERIALIZE, System.nanoTime() - converted);
+                }
+            }
+            generator.flush();
+            if (learning) {
+                shapes.documentLearned();
+            }
+            if (timed) {
+                recordTotal(System.nanoTime() - start);
+            }
+            logger.debug("XML to JSON conversion completed successfully");
+        } catch (LimitExceededException e) {
+            metrics.recordError(e);
+            throw e;
         } catch (Exception e) {
-            logger.error("Error converting XML to JSON", e);
+            // The parser reports a read failure of the limited input without its cause; without a
+            // byte limit the input is the caller's, which may have a limit of its own
+            LimitExceededException exceeded = limits.getMaxBytes() > 0
+                    && source.getByteStream() instanceof CountingStreams.Input
+                    && ((CountingStreams.Input) source.getByteStream()).isExceeded()
+                    ? new LimitExceededException("bytes", limits.getMaxBytes())
+                    : null;
+            // Logged once by the caller at the service boundary
+            metrics.recordError(exceeded != null ? exceeded : e);
+            if (exceeded != null) {
+                throw exceeded;
+            }
             throw new XmlToJsonConverterException("Failed to convert XML to JSON", e);
         }
     }
 
     /**
-     * Parses XML string to Document
+     * Writes a JSON tree like ObjectMapper.writeTree, but without recursion, so that the depth of a
+     * document needs no deep call stack
+     */
+    private static void writeTree(JsonGenerator generator, JsonNode tree) throws IOException {
+        Deque<JsonNode> containers = new ArrayDeque<>();
+        Deque<Iterator<?>> remaining = new ArrayDeque<>();
+        JsonNode node = tree;
+        while (true) {
+            if (node.isObject()) {
+                generator.writeStartObject();
+                containers.push(node);
+                remaining.push(node.fields());
+            } else if (node.isArray()) {
+                generator.writeStartArray();
+                containers.push(node);
+                remaining.push(node.elements());
+            } else if (node.isNull()) {
+                generator.writeNull();
+            } else {
+                // Value nodes write themselves without a provider
+                node.serialize(generator, null);
+            }
+
+            node = null;
+            while (node == null) {
+                if (remaining.isEmpty()) {
+                    return;
+                }
+                Iterator<?> items = remaining.peek();
+                if (!items.hasNext()) {
+                    remaining.pop();
+                    if (containers.pop().isObject()) {
+                        generator.writeEndObject();
+                    } else {
+                        generator.writeEndArray();
+                    }
+                } else if (containers.peek().isObject()) {
+                    Map.Entry<?, ?> field = (Map.Entry<?, ?>) items.next();
+                    generator.writeFieldName((String) field.getKey());
+                    node = (JsonNode) field.getValue();
+                } else {
+                    node = (JsonNode) items.next();
+                }
+            }
+        }
+    }
+
+    private void recordTotal(long nanos) {
+        metrics.recordPhase(ConversionMetrics.Phase.TOTAL, nanos);
+        if (slowConversionNanos > 0 && nanos > slowConversionNanos) {
+            logger.warn("Slow XML to JSON conversion took {} ms", TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    /**
+     * Converts a parsed document to the JSON tree used by the DOM engine
+     */
+    private ObjectNode convertDocument(Document document, Projection projection) throws XmlToJsonConverterException {
+        ObjectNode rootNode = JsonNodeFactory.instance.objectNode();
+        Element rootElement = document.getDocumentElement();
+
+        // Create Response object
+        ObjectNode responseNode = JsonNodeFactory.instance.objectNode();
+        rootNode.set(rootElement.getNodeName(), responseNode);
+
+        // Process all child elements, aggregating Match scores on the way
+        boolean timed = metrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0L;
+        MatchScoreAggregator scores = newScoreAggregator();
+        String rootName = rootElement.getNodeName();
+        // A ResultBlock root, e.g. an NDJSON record, holds MatchSummary itself
+        boolean resultBlockRoot = "ResultBlock".equals(rootName);
+        if (matchSummaryEnabled && resultBlockRoot) {
+            responseNode.putObject("MatchSummary");
+        }
+        new TreeConversion(scores).run(rootElement, responseNode, projection.root(rootName),
+                shapes == null ? ShapeRegistry.Node.NONE : shapes.root(rootName));
+        long converted = timed ? System.nanoTime() : 0L;
+
+        // Add the custom MatchSummary field with TotalMatchScore, unless a projection left ResultBlock out
+        if (matchSummaryEnabled && resultBlockRoot) {
+            scores.putSummary(responseNode.putObject("MatchSummary"), plan);
+        } else if (matchSummaryEnabled && (projection.isAll() || responseNode.has("ResultBlock"))) {
+            addMatchSummaryField(responseNode, scores);
+        }
+
+        if (timed) {
+            metrics.recordPhase(ConversionMetrics.Phase.CONVERT, converted - start);
+            metrics.recordPhase(ConversionMetrics.Phase.SUMMARY, System.nanoTime() - converted);
+            metrics.recordCounts(document.getElementsByTagName("*").getLength(), scores.getMatchCount());
+        }
+
+        return rootNode;
+    }
+
+    private XMLStreamReader createStreamReader(InputSource source) throws XmlToJsonConverterException {
+        try {
+            return parserPool.createStreamReader(source);
+        } catch (XMLStreamException e) {
+            throw new XmlToJsonConverterException("Failed to parse XML string", e);
+        }
+    }
+
+    /**
+     * Parses XML source to Document. Package-private, like the other DOM phases, for the benchmarks.
      */
-    private Document parseXmlString(String xmlString) throws Exception {
+    Document parseXml(InputSource source) throws Exception {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            // For security reasons, disable DTDs
-            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            InputStream inputStream = new ByteArrayInputStream(xmlString.getBytes(StandardCharsets.UTF_8));
-            return builder.parse(inputStream);
+            // Pooled builders come from a cached factory with DTDs disabled
+            DocumentBuilder builder = parserPool.borrowDocumentBuilder();
+            try {
+                return builder.parse(source);
+            } finally {
+                parserPool.release(builder);
+            }
         } catch (Exception e) {
-            logger.error("Error parsing XML string", e);
             throw new XmlToJsonConverterException("Failed to parse XML string", e);
         }
     }
 
     /**
-     * Recursively converts XML element to JSON
+     * Converts XML element to JSON
      */
-    private void convertElementToJson(Element element, ObjectNode jsonNode) {
-        // Get all child nodes
-        NodeList childNodes = element.getChildNodes();
+    void convertElementToJson(Element element, ObjectNode jsonNode, MatchScoreAggregator scores)
+            throws LimitExceededException {
+        new TreeConversion(scores).run(element, jsonNode, Projection.State.EVERYTHING, ShapeRegistry.Node.NONE);
+    }
+
+    /**
+     * One walk of a parsed document, with a stack of the open elements instead of recursion so that
+     * deep documents need no deep call stack. The limits are checked on the way, including the
+     * subtrees converted as a whole, such as Match lists, leaves and skipped elements.
+     */
+    private final class TreeConversion {
+        private final MatchScoreAggregator scores;
+        private final ConversionLimits.TreeCheck check = limits.newTreeCheck();
+        private final Deque<OpenElement> open = new ArrayDeque<>();
 
-        // Handle special case for MatchDetails to ensure it's an array
-        if ("MatchDetails".equals(element.getNodeName())) {
-            processMatchDetailsElement(element, jsonNode);
-            return;
+        TreeConversion(MatchScoreAggregator scores) {
+            this.scores = scores;
         }
 
-        // Process each child node
-        for (int i = 0; i < childNodes.getLength(); i++) {
-            Node childNode = childNodes.item(i);
-
-            if (childNode.getNodeType() == Node.ELEMENT_NODE) {
-                Element childElement = (Element) childNode;
-                String nodeName = childElement.getNodeName();
-
-                // Check if this element has already been added as an array
-                if (jsonNode.has(nodeName) && jsonNode.get(nodeName).isArray()) {
-                    // If already an array, add to it
-                    ArrayNode arrayNode = (ArrayNode) jsonNode.get(nodeName);
-                    ObjectNode newChild = objectMapper.createObjectNode();
-                    convertElementToJson(childElement, newChild);
-                    arrayNode.add(newChild);
-                } else if (jsonNode.has(nodeName)) {
-                    // If exists but not an array, convert to array
-                    JsonNode existingNode = jsonNode.get(nodeName);
-                    ArrayNode arrayNode = objectMapper.createArrayNode();
-
-                    // If existing node is an object, add it to array
-                    if (existingNode.isObject()) {
-                        arrayNode.add(existingNode);
-                    }
+        /**
+         * Converts the children of the root selected by the projection state into the JSON object,
+         * with the shape known for the root's path
+         */
+        void run(Element root, ObjectNode jsonNode, Projection.State selection, ShapeRegistry.Node shape)
+                throws LimitExceededException {
+            check.element(root, 1);
+            open(root, jsonNode, selection, shape);
+            while (!open.isEmpty()) {
+                OpenElement parent = open.peek();
+                Node child = parent.next;
+                if (child == null) {
+                    open.pop();
+                    close(parent);
+                    continue;
+                }
+                parent.next = child.getNextSibling();
+                short type = child.getNodeType();
+                if (type == Node.ELEMENT_NODE) {
+                    parent.textLength = 0;
+                    convertChild(parent, (Element) child);
+                } else if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                    parent.textLength += child.getNodeValue().length();
+                    check.text(parent.textLength);
+                }
+            }
+        }
 
-                    // Add new element
-                    ObjectNode newChild = objectMapper.createObjectNode();
-                    convertElementToJson(childElement, newChild);
-                    arrayNode.add(newChild);
+        /**
+         * Starts converting an element into its JSON object, at the depth after the open elements
+         */
+        private void open(Element element, ObjectNode jsonNode, Projection.State selection, ShapeRegistry.Node shape)
+                throws LimitExceededException {
+            // Handle special case for MatchDetails to ensure it's an array
+            ConversionPlan.ElementRule rule = plan.rule(element.getNodeName());
+            if (rule.handler == ConversionPlan.Handler.MATCH_LIST) {
+                check.descendants(element, open.size() + 1);
+                processMatchDetailsElement(element, jsonNode, rule, scores, shape);
+                return;
+            }
+            open.push(new OpenElement(element, jsonNode, selection, shape));
+        }
+
+        /**
+         * Finishes an element once all its children are converted
+         */
+        private void close(OpenElement element) {
+            if (element.shape.isLearning()) {
+                element.shape.recordFields(element.json.size());
+                if (element.occurrences != null) {
+                    element.shape.recordChildren(element.occurrences);
+                }
+            }
 
-                    // Replace with array
+            // Handle attributes
+            processAttributes(element.element, element.json);
+        }
+
+        private void convertChild(OpenElement parent, Element childElement) throws LimitExceededException {
+            int depth = open.size() + 1;
+            check.element(childElement, depth);
+            ObjectNode jsonNode = parent.json;
+            String nodeName = childElement.getNodeName();
+            ConversionPlan.ElementRule rule = plan.rule(nodeName);
+
+            if (rule.handler == ConversionPlan.Handler.SKIP) {
+                check.descendants(childElement, depth);
+                return;
+            }
+            Projection.State childSelection = parent.selection.child(nodeName);
+            if (childSelection == null) {
+                check.descendants(childElement, depth);
+                if (matchSummaryEnabled) {
+                    scoreSkipped(childElement, scores);
+                }
+                return;
+            }
+            if (parent.shape.isLearning()) {
+                parent.occurred(nodeName);
+            }
+            ShapeRegistry.Node childShape = parent.shape.child(nodeName);
+            if (rule.handler == ConversionPlan.Handler.ARRAY
+                    || rule.handler == ConversionPlan.Handler.GENERIC && childShape.isArray()) {
+                // Declared arrays, and paths known to repeat, are arrays even with a single occurrence
+                JsonNode existingNode = jsonNode.get(nodeName);
+                ArrayNode arrayNode;
+                if (existingNode != null && existingNode.isArray()) {
+                    arrayNode = (ArrayNode) existingNode;
+                } else {
+                    arrayNode = JsonNodeFactory.instance.arrayNode(childShape.expectedItems());
                     jsonNode.set(nodeName, arrayNode);
+                }
+                // An object, or the text for leaves
+                if (hasChildElements(childElement)) {
+                    ObjectNode itemNode = arrayNode.addObject();
+                    open(childElement, itemNode, childSelection, childShape);
                 } else {
-                    // Special handling for Values containing multiple Value elements
-                    if ("Values".equals(nodeName)) {
-                        processValuesElement(childElement, jsonNode);
-                    } else if (hasChildElements(childElement)) {
-                        // If has child elements, create new object
-                        ObjectNode childJson = objectMapper.createObjectNode();
-                        jsonNode.set(nodeName, childJson);
-                        convertElementToJson(childElement, childJson);
-                    } else {
-                        // If leaf node, add value
-                        String textContent = childElement.getTextContent().trim();
-                        if (textContent.isEmpty()) {
-                            jsonNode.putNull(nodeName);
-                        } else {
-                            jsonNode.put(nodeName, textContent);
-                        }
-                    }
+                    check.descendants(childElement, depth);
+                    arrayNode.add(leafNode(childElement, parent.element.getNodeName(), null));
                 }
+                return;
+            }
+
+            // Check if this element has already been added as an array
+            if (jsonNode.has(nodeName) && jsonNode.get(nodeName).isArray()) {
+                // If already an array, add to it
+                ObjectNode newChild = ((ArrayNode) jsonNode.get(nodeName)).addObject();
+                open(childElement, newChild, childSelection, childShape);
+            } else if (jsonNode.has(nodeName)) {
+                // If exists but not an array, convert to array
+                JsonNode existingNode = jsonNode.get(nodeName);
+                ArrayNode arrayNode = JsonNodeFactory.instance.arrayNode();
+
+                // If existing node is an object, add it to array
+                if (existingNode.isObject()) {
+                    arrayNode.add(existingNode);
+                }
+
+                // Add new element and replace with array
+                ObjectNode newChild = arrayNode.addObject();
+                jsonNode.set(nodeName, arrayNode);
+                open(childElement, newChild, childSelection, childShape);
+            } else if (rule.handler == ConversionPlan.Handler.VALUE_LIST) {
+                // Special handling for Values containing multiple Value elements
+                check.descendants(childElement, depth);
+                processValuesElement(childElement, jsonNode, rule, childShape);
+            } else if (hasChildElements(childElement)) {
+                // If has child elements, create new object
+                ObjectNode childJson = jsonNode.putObject(nodeName);
+                if (matchSummaryEnabled && "ResultBlock".equals(nodeName)
+                        && parent.element.getParentNode().getNodeType() == Node.DOCUMENT_NODE
+                        && !"ResultBlock".equals(parent.element.getNodeName()) && !repeatsLater(childElement)) {
+                    // Reserve the MatchSummary slot first, it is filled in once all Matches are
+                    // scored; a repeated ResultBlock becomes an array, which gets no summary
+                    childJson.putObject("MatchSummary");
+                }
+                open(childElement, childJson, childSelection, childShape);
+            } else {
+                // If leaf node, add value
+                check.descendants(childElement, depth);
+                jsonNode.set(nodeName, leafNode(childElement, parent.element.getNodeName(), null));
+            }
+        }
+    }
+
+    /**
+     * Element being converted, with the next child node to convert
+     */
+    private static final class OpenElement {
+        final Element element;
+        final ObjectNode json;
+        final Projection.State selection;
+        final ShapeRegistry.Node shape;
+        Node next;
+        // Text read so far since the last tag
+        long textLength;
+        // Converted children by name, counted while the shape registry is learning
+        Map<String, Integer> occurrences;
+
+        OpenElement(Element element, ObjectNode json, Projection.State selection, ShapeRegistry.Node shape) {
+            this.element = element;
+            this.json = json;
+            this.selection = selection;
+            this.shape = shape;
+            this.next = element.getFirstChild();
+        }
+
+        void occurred(String childName) {
+            if (occurrences == null) {
+                occurrences = new HashMap<>();
             }
+            occurrences.merge(childName, 1, Integer::sum);
         }
+    }
 
-        // Handle attributes
-        processAttributes(element, jsonNode);
+    /**
+     * Text content of a leaf, typed as declared for it, or {@code blank} when there is none
+     */
+    private JsonNode leafNode(Element element, String parentName, Object blank) {
+        ConversionPlan.LeafType type = plan.leafType(parentName, element.getNodeName());
+        return LeafValues.node(LeafValues.value(textContent(element), type, blank));
     }
 
     /**
-     * Process the MatchDetails element to ensure it matches desired format
+     * Text of all the descendants of a node in document order, as {@link Node#getTextContent()}
+     * returns it, but without recursion
      */
-    private void processMatchDetailsElement(Element matchDetailsElement, ObjectNode parentNode) {
-        ArrayNode matchesArray = objectMapper.createArrayNode();
-        parentNode.set("MatchDetails", matchesArray);
+    private static String textContent(Node node) {
+        Node child = node.getFirstChild();
+        if (child == null) {
+            return "";
+        }
+        if (child.getNextSibling() == null && isText(child)) {
+            // The usual leaf, a single text node
+            return child.getNodeValue();
+        }
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            if (isText(child)) {
+                text.append(child.getNodeValue());
+            } else if (child.getNodeType() == Node.ELEMENT_NODE && child.getFirstChild() != null) {
+                child = child.getFirstChild();
+                continue;
+            }
+            // Next sibling of the node or of the nearest ancestor below the starting node
+            while (child.getNextSibling() == null) {
+                child = child.getParentNode();
+                if (child == node) {
+                    return text.toString();
+                }
+            }
+            child = child.getNextSibling();
+        }
+    }
+
+    private static boolean isText(Node node) {
+        return node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE;
+    }
 
+    /**
+     * Process the MatchDetails element to ensure it matches desired format
+     */
+    private void processMatchDetailsElement(Element matchDetailsElement, ObjectNode parentNode,
+                                            ConversionPlan.ElementRule rule, MatchScoreAggregator scores,
+                                            ShapeRegistry.Node shape) {
         // Get all Match elements
-        NodeList matchNodes = matchDetailsElement.getElementsByTagName("Match");
+        NodeList matchNodes = itemElements(matchDetailsElement, rule.childName, shape);
+        ArrayNode matchesArray = JsonNodeFactory.instance.arrayNode(matchNodes.getLength());
+        parentNode.set(matchDetailsElement.getNodeName(), matchesArray);
+
         for (int i = 0; i < matchNodes.getLength(); i++) {
             Element matchElement = (Element) matchNodes.item(i);
-            ObjectNode matchNode = objectMapper.createObjectNode();
+            ObjectNode matchNode = JsonNodeFactory.instance.objectNode();
+            scores.countMatch();
 
             // Process each field in the Match element
             NodeList matchChildNodes = matchElement.getChildNodes();
@@ -244,54 +750,124 @@ public class XmlToJsonConverter {
                 if (childNode.getNodeType() == Node.ELEMENT_NODE) {
                     Element childElement = (Element) childNode;
                     String fieldName = childElement.getNodeName();
-                    String fieldValue = childElement.getTextContent().trim();
 
                     // Apply field mapping if exists
-                    String mappedFieldName = fieldMappings.getOrDefault("MatchDetails." + fieldName, fieldName);
+                    String mappedFieldName = rule.fieldKey(fieldName);
 
                     // Special handling for Score field - use the value from the second match as 40 if it's the second Match
-                    if ("Score".equals(fieldName) && i == 1) {
-                        String overrideValue = config.getProperty("override.second.match.score");
-                        if (overrideValue != null && !overrideValue.isEmpty()) {
-                            fieldValue = overrideValue;
-                        } else if ("40".equals(config.getProperty("fixed.second.match.score"))) {
-                            fieldValue = "40";
+                    if (plan.isScore(fieldName)) {
+                        String fieldValue = plan.score(textContent(childElement).trim(), i);
+                        if (matchSummaryEnabled) {
+                            scores.add(fieldValue);
                         }
+                        ConversionPlan.LeafType type = plan.leafType(matchElement.getNodeName(), fieldName);
+                        matchNode.set(mappedFieldName, LeafValues.node(LeafValues.value(fieldValue, type, "")));
+                    } else {
+                        matchNode.set(mappedFieldName, leafNode(childElement, matchElement.getNodeName(), ""));
                     }
-
-                    matchNode.put(mappedFieldName, fieldValue);
                 }
             }
 
             // Format to directly add "Match" objects to the array as requested in your output
-            ObjectNode matchContainer = objectMapper.createObjectNode();
-            matchContainer.set("Match", matchNode);
+            ObjectNode matchContainer = JsonNodeFactory.instance.objectNode();
+            matchContainer.set(rule.childName, matchNode);
             matchesArray.add(matchContainer);
         }
     }
 
+    /**
+     * Feeds the Match scores of an element left out by a projection to the aggregator, so that
+     * MatchSummary does not depend on the projection
+     */
+    private void scoreSkipped(Element element, MatchScoreAggregator scores) {
+        Deque<Element> pending = new ArrayDeque<>();
+        pending.push(element);
+        while (!pending.isEmpty()) {
+            Element next = pending.pop();
+            ConversionPlan.ElementRule rule = plan.rule(next.getNodeName());
+            if (rule.handler == ConversionPlan.Handler.MATCH_LIST) {
+                NodeList matchNodes = next.getElementsByTagName(rule.childName);
+                for (int i = 0; i < matchNodes.getLength(); i++) {
+                    scores.countMatch();
+                    NodeList fields = matchNodes.item(i).getChildNodes();
+                    for (int j = 0; j < fields.getLength(); j++) {
+                        Node field = fields.item(j);
+                        if (field.getNodeType() == Node.ELEMENT_NODE && plan.isScore(field.getNodeName())) {
+                            scores.add(plan.score(textContent(field).trim(), i));
+                        }
+                    }
+                }
+                continue;
+            }
+            // Pushed last to first, so that the children are scored in document order
+            for (Node child = next.getLastChild(); child != null; child = child.getPreviousSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE
+                        && plan.rule(child.getNodeName()).handler != ConversionPlan.Handler.SKIP) {
+                    pending.push((Element) child);
+                }
+            }
+        }
+    }
+
     /**
      * Process Values element to handle multiple Value elements
      */
-    private void processValuesElement(Element valuesElement, ObjectNode parentNode) {
-        ObjectNode valuesNode = objectMapper.createObjectNode();
-        NodeList valueNodes = valuesElement.getElementsByTagName("Value");
+    private void processValuesElement(Element valuesElement, ObjectNode parentNode, ConversionPlan.ElementRule rule,
+                                      ShapeRegistry.Node shape) {
+        ObjectNode valuesNode = JsonNodeFactory.instance.objectNode();
+        NodeList valueNodes = itemElements(valuesElement, rule.childName, shape);
 
         if (valueNodes.getLength() > 1) {
             // Multiple values, use array
-            ArrayNode valueArray = objectMapper.createArrayNode();
+            if (shape.isLearning()) {
+                shape.child(rule.childName).recordItems(valueNodes.getLength());
+            }
+            ArrayNode valueArray = JsonNodeFactory.instance.arrayNode(valueNodes.getLength());
             for (int i = 0; i < valueNodes.getLength(); i++) {
                 Element valueElement = (Element) valueNodes.item(i);
-                valueArray.add(valueElement.getTextContent().trim());
+                valueArray.add(leafNode(valueElement, valuesElement.getNodeName(), ""));
             }
-            valuesNode.set("Value", valueArray);
+            valuesNode.set(rule.childName, valueArray);
         } else if (valueNodes.getLength() == 1) {
             // Single value
             Element valueElement = (Element) valueNodes.item(0);
-            valuesNode.put("Value", valueElement.getTextContent().trim());
+            valuesNode.set(rule.childName, leafNode(valueElement, valuesElement.getNodeName(), ""));
         }
 
-        parentNode.set("Values", valuesNode);
+        parentNode.set(valuesElement.getNodeName(), valuesNode);
+    }
+
+    /**
+     * Match or Value items of a match-list or value-list element: its direct children when the path
+     * is declared in shape.direct.paths, otherwise all descendants of that name
+     */
+    private static NodeList itemElements(Element owner, String itemName, ShapeRegistry.Node shape) {
+        return shape.isDirectOnly() ? new ChildElements(owner, itemName) : owner.getElementsByTagName(itemName);
+    }
+
+    /**
+     * Direct child elements with a given name
+     */
+    private static final class ChildElements implements NodeList {
+        private final List<Node> elements = new ArrayList<>();
+
+        ChildElements(Element parent, String name) {
+            for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE && name.equals(child.getNodeName())) {
+                    elements.add(child);
+                }
+            }
+        }
+
+        @Override
+        public Node item(int index) {
+            return index < elements.size() ? elements.get(index) : null;
+        }
+
+        @Override
+        public int getLength() {
+            return elements.size();
+        }
     }
 
     /**
@@ -307,85 +883,93 @@ public class XmlToJsonConverter {
     }
 
     /**
-     * Calculate total match score from all Match elements
+     * Add MatchSummary field with TotalMatchScore to the JSON, filling the slot reserved in ResultBlock
      */
-    private int calculateTotalMatchScore(Document document) throws XmlToJsonConverterException {
-        try {
-            int totalScore = 0;
-            NodeList scoreNodes = document.getElementsByTagName("Score");
-
-            for (int i = 0; i < scoreNodes.getLength(); i++) {
-                Element scoreElement = (Element) scoreNodes.item(i);
-                String scoreStr = scoreElement.getTextContent().trim();
-
-                // For the second Match, override the score if configured
-                if (i == 1) {
-                    String overrideValue = config.getProperty("override.second.match.score");
-                    if (overrideValue != null && !overrideValue.isEmpty()) {
-                        scoreStr = overrideValue;
-                    } else if ("40".equals(config.getProperty("fixed.second.match.score"))) {
-                        scoreStr = "40";
-                    }
-                }
+    void addMatchSummaryField(ObjectNode responseNode, MatchScoreAggregator scores) {
+        // Find the ResultBlock node
+        JsonNode resultBlockNode = responseNode.get("ResultBlock");
+        if (resultBlockNode instanceof ObjectNode) {
+            // Replaces the placeholder in place, or appends when no slot was reserved
+            scores.putSummary(((ObjectNode) resultBlockNode).putObject("MatchSummary"), plan);
+        } else {
+            logger.warn("ResultBlock not found in response. Cannot add MatchSummary.");
+        }
+    }
 
-                try {
-                    int score = Integer.parseInt(scoreStr);
+    /**
+     * Metrics this converter reports to
+     */
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
 
-                    // Check for potential overflow
-                    if ("long".equalsIgnoreCase(scoreDataType)) {
-                        if (totalScore > maxLongValue - score) {
-                            logger.warn("Total score exceeds maximum long value. Returning max value");
-                            return (int) Math.min(maxLongValue, Integer.MAX_VALUE);
-                        }
-                    } else { // Integer type
-                        if (totalScore > maxIntValue - score) {
-                            logger.warn("Total score exceeds maximum integer value. Returning max value");
-                            return maxIntValue;
-                        }
-                    }
+    /**
+     * Configuration value of this converter, for components built around it
+     */
+    public String getConfigProperty(String key, String defaultValue) {
+        return config.getProperty(key, defaultValue);
+    }
 
-                    totalScore += score;
-                } catch (NumberFormatException e) {
-                    logger.warn("Non-numeric score found: {}. Skipping this value.", scoreStr);
-                }
-            }
+    /**
+     * Format written by the stream API unless another one is requested
+     */
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
 
-            logger.debug("Calculated total match score: {}", totalScore);
-            return totalScore;
-        } catch (Exception e) {
-            logger.error("Error calculating total match score", e);
-            throw new XmlToJsonConverterException("Failed to calculate total match score", e);
-        }
+    /**
+     * Size limits applied to every document
+     */
+    public ConversionLimits getLimits() {
+        return limits;
     }
 
     /**
-     * Add MatchSummary field with TotalMatchScore to the JSON
+     * Shapes declared or learned by this converter, or null when shape.* is not configured
      */
-    private void addMatchSummaryField(ObjectNode responseNode, int totalScore) {
-        // Find the ResultBlock node
-        if (responseNode.has("ResultBlock")) {
-            ObjectNode resultBlockNode = (ObjectNode) responseNode.get("ResultBlock");
+    public ShapeRegistry getShapeRegistry() {
+        return shapes;
+    }
 
-            // Create MatchSummary node
-            ObjectNode matchSummaryNode = objectMapper.createObjectNode();
-            matchSummaryNode.put("TotalMatchScore", String.valueOf(totalScore));
+    /**
+     * Projection from projection.include and projection.exclude, applied unless another one is passed
+     */
+    public Projection getProjection() {
+        return projection;
+    }
 
-            // Store current field values
-            Map<String, JsonNode> fieldMap = new HashMap<>();
-            resultBlockNode.fieldNames().forEachRemaining(name ->
-                    fieldMap.put(name, resultBlockNode.get(name)));
+    /**
+     * Fingerprint of this converter's configuration, a hex SHA-256 of its entries; equal for
+     * converters producing the same output
+     */
+    public String getConfigFingerprint() {
+        return configFingerprint;
+    }
 
-            // Clear all fields
-            fieldMap.keySet().forEach(resultBlockNode::remove);
+    /**
+     * Whether the other converter was created from equal configuration entries
+     */
+    boolean hasSameConfig(XmlToJsonConverter other) {
+        return config.equals(other.config);
+    }
 
-            // Add MatchSummary first
-            resultBlockNode.set("MatchSummary", matchSummaryNode);
+    /**
+     * Pool of XML parsers used by this converter, exposing its size and hit/miss counts
+     */
+    public XmlParserPool getParserPool() {
+        return parserPool;
+    }
 
-            // Re-add other fields in order
-            fieldMap.forEach(resultBlockNode::set);
-        } else {
-            logger.warn("ResultBlock not found in response. Cannot add MatchSummary.");
-        }
+    ConversionPlan getPlan() {
+        return plan;
+    }
+
+    MatchScoreAggregator newScoreAggregator() {
+        return new MatchScoreAggregator(scoreSettings);
+    }
+
+    boolean isMatchSummaryEnabled() {
+        return matchSummaryEnabled;
     }
 
     /**
@@ -401,10 +985,24 @@ public class XmlToJsonConverter {
         return false;
     }
 
+    /**
+     * Whether an element with the same name follows the element among its siblings
+     */
+    private static boolean repeatsLater(Element element) {
+        for (Node sibling = element.getNextSibling(); sibling != null; sibling = sibling.getNextSibling()) {
+            if (sibling.getNodeType() == Node.ELEMENT_NODE && element.getNodeName().equals(sibling.getNodeName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Custom exception class for XML to JSON conversion errors
      */
     public static class XmlToJsonConverterException extends Exception {
+        private static final long serialVersionUID = 1L;
+
         public XmlToJsonConverterException(String message) {
             super(message);
         }
@@ -414,4 +1012,31 @@ public class XmlToJsonConverter {
         }
     }
 
+    /**
+     * Thrown as soon as a document crosses one of the limits.* settings
+     */
+    public static class LimitExceededException extends XmlToJsonConverterException {
+        private static final long serialVersionUID = 1L;
+
+        private final String limit;
+        private final long maximum;
+
+        public LimitExceededException(String limit, long maximum) {
+            super("XML document exceeds limits.max." + limit + "=" + maximum);
+            this.limit = limit;
+            this.maximum = maximum;
+        }
+
+        /**
+         * Name of the crossed limit, e.g. depth or bytes
+         */
+        public String getLimit() {
+            return limit;
+        }
+
+        public long getMaximum() {
+            return maximum;
+        }
+    }
+
 }
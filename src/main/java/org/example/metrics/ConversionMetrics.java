@@ -0,0 +1,69 @@
+package org.example.metrics;
+
+/**
+ * Instrumentation hooks called by the converter for every conversion.
+ *
+ * Implementations must be thread-safe. Callers check {@link #isEnabled()} before taking
+ * timestamps, so a disabled implementation costs one virtual call per conversion.
+ */
+public interface ConversionMetrics {
+
+    /**
+     * Conversion phases with their own latency
+     */
+    enum Phase {
+        /** XML parsing into a DOM (DOM engine only) */
+        PARSE,
+        /** Element walk building the output, including Match score aggregation */
+        CONVERT,
+        /** MatchSummary computation and insertion (DOM engine only) */
+        SUMMARY,
+        /** Writing the output through the generator */
+        SERIALIZE,
+        /** The whole conversion */
+        TOTAL
+    }
+
+    /** Metrics that record nothing */
+    ConversionMetrics NOOP = new ConversionMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordPhase(Phase phase, long nanos) {
+        }
+
+        @Override
+        public void recordSizes(long inputSize, long outputSize) {
+        }
+
+        @Override
+        public void recordCounts(long elements, long matches) {
+        }
+
+        @Override
+        public void recordError(Throwable error) {
+        }
+    };
+
+    boolean isEnabled();
+
+    void recordPhase(Phase phase, long nanos);
+
+    /**
+     * Input and output size of a successful conversion: bytes for the stream APIs, characters for Strings
+     */
+    void recordSizes(long inputSize, long outputSize);
+
+    /**
+     * Number of XML elements and Match entries in a converted document
+     */
+    void recordCounts(long elements, long matches);
+
+    /**
+     * Failed conversion, counted by the class of its root cause
+     */
+    void recordError(Throwable error);
+}
@@ -0,0 +1,42 @@
+package org.example.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link HistogramMetrics}, registered as {@value HistogramMetrics#OBJECT_NAME}
+ */
+public interface ConversionMetricsMXBean {
+
+    long getConversionCount();
+
+    long getErrorCount();
+
+    /**
+     * Failed conversions by the simple class name of their root cause
+     */
+    Map<String, Long> getErrorsByCause();
+
+    long getInputSizeTotal();
+
+    long getOutputSizeTotal();
+
+    long getElementCount();
+
+    long getMatchCount();
+
+    /**
+     * Latency in microseconds per phase, keyed like {@code parse.p50}, {@code parse.p99},
+     * {@code parse.p999}, {@code parse.max} and {@code parse.count}
+     */
+    Map<String, Long> getLatencyMicros();
+
+    /**
+     * Percentiles of the input size, keyed like the latencies
+     */
+    Map<String, Long> getInputSizes();
+
+    /**
+     * Forgets everything recorded so far
+     */
+    void reset();
+}
@@ -0,0 +1,197 @@
+package org.example.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process metrics keeping a {@link LatencyHistogram} per phase and plain counters for sizes,
+ * element and Match counts and errors. All converters of the JVM share {@link #getDefault()},
+ * which is published over JMX.
+ */
+public final class HistogramMetrics implements ConversionMetrics, ConversionMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(HistogramMetrics.class);
+
+    public static final String OBJECT_NAME = "org.example:type=ConversionMetrics";
+
+    private static volatile HistogramMetrics defaultInstance;
+
+    private volatile State state = new State();
+
+    /**
+     * The JVM-wide instance, registered as an MXBean the first time it is requested
+     */
+    public static HistogramMetrics getDefault() {
+        HistogramMetrics instance = defaultInstance;
+        if (instance == null) {
+            synchronized (HistogramMetrics.class) {
+                instance = defaultInstance;
+                if (instance == null) {
+                    instance = new HistogramMetrics();
+                    instance.register(OBJECT_NAME);
+                    defaultInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Registers this instance with the platform MBean server under the given name
+     */
+    public void register(String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register conversion metrics as {}", objectName, e);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordPhase(Phase phase, long nanos) {
+        state.latencies.get(phase).record(nanos);
+        if (phase == Phase.TOTAL) {
+            state.conversions.increment();
+        }
+    }
+
+    @Override
+    public void recordSizes(long inputSize, long outputSize) {
+        State current = state;
+        current.inputSizes.record(inputSize);
+        current.inputTotal.add(inputSize);
+        current.outputTotal.add(outputSize);
+    }
+
+    @Override
+    public void recordCounts(long elements, long matches) {
+        State current = state;
+        current.elements.add(elements);
+        current.matches.add(matches);
+    }
+
+    @Override
+    public void recordError(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        State current = state;
+        current.errors.increment();
+        current.errorsByCause.computeIfAbsent(cause.getClass().getSimpleName(), k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Latency histogram of one phase, in nanoseconds
+     */
+    public LatencyHistogram getLatency(Phase phase) {
+        return state.latencies.get(phase);
+    }
+
+    @Override
+    public long getConversionCount() {
+        return state.conversions.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return state.errors.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByCause() {
+        Map<String, Long> errors = new TreeMap<>();
+        state.errorsByCause.forEach((cause, count) -> errors.put(cause, count.sum()));
+        return errors;
+    }
+
+    @Override
+    public long getInputSizeTotal() {
+        return state.inputTotal.sum();
+    }
+
+    @Override
+    public long getOutputSizeTotal() {
+        return state.outputTotal.sum();
+    }
+
+    @Override
+    public long getElementCount() {
+        return state.elements.sum();
+    }
+
+    @Override
+    public long getMatchCount() {
+        return state.matches.sum();
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMicros() {
+        Map<String, Long> latencies = new TreeMap<>();
+        for (Map.Entry<Phase, LatencyHistogram> entry : state.latencies.entrySet()) {
+            putPercentiles(latencies, entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue(), 1000);
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getInputSizes() {
+        Map<String, Long> sizes = new TreeMap<>();
+        putPercentiles(sizes, "input", state.inputSizes, 1);
+        return sizes;
+    }
+
+    private static void putPercentiles(Map<String, Long> target, String prefix, LatencyHistogram histogram, long divisor) {
+        target.put(prefix + ".count", histogram.getCount());
+        target.put(prefix + ".p50", histogram.getValueAtPercentile(50) / divisor);
+        target.put(prefix + ".p99", histogram.getValueAtPercentile(99) / divisor);
+        target.put(prefix + ".p999", histogram.getValueAtPercentile(99.9) / divisor);
+        target.put(prefix + ".max", histogram.getMax() / divisor);
+    }
+
+    @Override
+    public void reset() {
+        state = new State();
+    }
+
+    /**
+     * Everything recorded since the last reset, swapped as a whole so that reset needs no locking
+     */
+    private static final class State {
+        final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+        final LatencyHistogram inputSizes = new LatencyHistogram();
+        final LongAdder conversions = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final ConcurrentMap<String, LongAdder> errorsByCause = new ConcurrentHashMap<>();
+        final LongAdder inputTotal = new LongAdder();
+        final LongAdder outputTotal = new LongAdder();
+        final LongAdder elements = new LongAdder();
+        final LongAdder matches = new LongAdder();
+
+        State() {
+            for (Phase phase : Phase.values()) {
+                latencies.put(phase, new LatencyHistogram());
+            }
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package org.example.server;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.converter.ConverterRegistry;
+import org.example.converter.CountingStreams;
+import org.example.converter.OutputFormat;
+import org.example.converter.Projection;
+import org.example.converter.XmlParserPool;
+import org.example.converter.XmlToJsonConverter;
+import org.example.metrics.ConversionMetrics;
+import org.example.metrics.HistogramMetrics;
+import org.example.service.ConversionCache;
+import org.example.service.XmlToJsonService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Standalone HTTP endpoint around the converter, built on the JDK's HttpServer.
+ *
+ * <ul>
+ *   <li>{@code POST /convert} streams the request body into the converter and the result back with
+ *       chunked encoding. The charset comes from the Content-Type header, the output format from
+ *       the Accept header (JSON, Smile, CBOR or MessagePack), defaulting to output.format. An
+ *       X-Correlation-Id header is used for the log lines of the request, or generated, and echoed back.
+ *       Comma-separated {@code include} and {@code exclude} query parameters replace the configured
+ *       projection for the request.</li>
+ *   <li>{@code GET /health} answers while the server is running, even when saturated.</li>
+ *   <li>{@code GET /metrics} returns the conversion metrics, parser pool, cache and server counters as JSON.</li>
+ * </ul>
+ * Conversions run on a bounded worker pool (or virtual threads). Once server.max.concurrent
+ * requests are running or queued, further conversions get 429 without touching the converter.
+ * Health and metrics requests are answered on the HTTP dispatcher thread and never wait for
+ * an admission.
+ */
+public final class ConversionServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConversionServer.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String CORRELATION_ID_HEADER = "X-Correlation-Id";
+    private static final String SERVER_PREFIX = "server.";
+
+    // Converter the server settings are read from
+    private final XmlToJsonConverter converter;
+    private final ConverterRegistry registry;
+    private final XmlToJsonService service;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final Semaphore admissions;
+    private final long maxRequestBytes;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Copy of the configuration with the server profile applied: every server.limits.* key replaces
+     * the limits.* key of the same name, so the server guards against hostile documents while other
+     * modes keep the limits.* values
+     */
+    public static Properties serverConfig(Properties config) {
+        Properties serverConfig = new Properties();
+        for (String key : config.stringPropertyNames()) {
+            serverConfig.setProperty(key, config.getProperty(key));
+        }
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith(SERVER_PREFIX + "limits.")) {
+                serverConfig.setProperty(key.substring(SERVER_PREFIX.length()), config.getProperty(key));
+            }
+        }
+        return serverConfig;
+    }
+
+    /**
+     * Creates a server on server.port that is not yet accepting requests
+     */
+    public ConversionServer(XmlToJsonConverter converter) throws IOException {
+        this(converter, Integer.parseInt(converter.getConfigProperty("server.port", "8080")));
+    }
+
+    /**
+     * Creates a server on the given port, 0 for any free port, that is not yet accepting requests
+     */
+    public ConversionServer(XmlToJsonConverter converter, int port) throws IOException {
+        this(converter, null, new XmlToJsonService(converter), port);
+    }
+
+    /**
+     * Creates a server on the given port converting with the default profile of the registry, and
+     * picking up its reloads, that is not yet accepting requests
+     */
+    public ConversionServer(ConverterRegistry registry, int port) throws IOException {
+        this(registry.getDefaultConverter(), registry,
+                new XmlToJsonService(registry, ConverterRegistry.DEFAULT_PROFILE), port);
+    }
+
+    private ConversionServer(XmlToJsonConverter converter, ConverterRegistry registry, XmlToJsonService service,
+                             int port) throws IOException {
+        this.converter = converter;
+        this.registry = registry;
+        this.service = service;
+        this.maxRequestBytes = Long.parseLong(converter.getConfigProperty("server.max.request.bytes", "10485760"));
+        String configuredThreads = converter.getConfigProperty("server.threads", "").trim();
+        int threads = configuredThreads.isEmpty()
+                ? Runtime.getRuntime().availableProcessors() * 2
+                : Integer.parseInt(configuredThreads);
+        this.admissions = new Semaphore(Integer.parseInt(converter.getConfigProperty("server.max.concurrent",
+                String.valueOf(threads * 4))));
+        this.workers = createWorkers(threads);
+
+        this.server = HttpServer.create(new InetSocketAddress(port),
+                Integer.parseInt(converter.getConfigProperty("server.backlog", "128")));
+        // Without an executor the handlers run on the dispatcher thread: health and metrics are
+        // answered there, conversions are admitted there and handed to the workers
+        this.server.createContext("/convert", this::handleConvert);
+        this.server.createContext("/health", this::handleHealth);
+        this.server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Virtual threads when server.executor is virtual (Java 21+), otherwise a fixed pool of
+     * server.threads threads whose queue holds the admitted requests
+     */
+    private ExecutorService createWorkers(int threads) {
+        if ("virtual".equalsIgnoreCase(converter.getConfigProperty("server.executor", "platform").trim())) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Virtual threads are not available on this JVM, using {} platform threads", threads);
+            }
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, admissions.availablePermits())),
+                task -> new Thread(task, "conversion-worker-" + threadNumber.incrementAndGet()));
+    }
+
+    /**
+     * Converter in use, the latest one of the registry profile when reloads are followed
+     */
+    private XmlToJsonConverter current() {
+        return registry == null ? converter : registry.getDefaultConverter();
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Conversion server listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, waits up to a second for running ones and shuts down the workers
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        workers.shutdown();
+        service.close();
+        logger.info("Conversion server stopped");
+    }
+
+    /**
+     * Hands the conversion to the workers when one of the server.max.concurrent admissions is
+     * free, otherwise answers with 429 straight away
+     */
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        requests.increment();
+        if (admissions.tryAcquire()) {
+            try {
+                workers.execute(() -> {
+                    try {
+                        handleAdmitted(exchange);
+                    } catch (IOException e) {
+                        logger.debug("Failed to answer conversion request", e);
+                    } finally {
+                        admissions.release();
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                admissions.release();
+            }
+        }
+        reject(exchange);
+    }
+
+    /**
+     * Answers 429 without a body, so the request body is left unread: the exchange is complete once
+     * the headers are sent and the connection is closed instead of being drained for reuse
+     */
+    private void reject(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.getResponseHeaders().set("Connection", "close");
+            exchange.sendResponseHeaders(429, -1);
+        }
+    }
+
+    private void handleAdmitted(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendText(exchange, 405, "Only POST is supported");
+                return;
+            }
+            if (contentLength(exchange.getRequestHeaders()) > maxRequestBytes) {
+                exchange.getResponseHeaders().set("Connection", "close");
+                sendText(exchange, 413, "Request body exceeds " + maxRequestBytes + " bytes");
+                return;
+            }
+            // Log lines of the conversion carry the caller's id, which is echoed back
+            String correlationId = exchange.getRequestHeaders().getFirst(CORRELATION_ID_HEADER);
+            if (correlationId == null || correlationId.isBlank()) {
+                correlationId = XmlToJsonService.newCorrelationId();
+            }
+            exchange.getResponseHeaders().set(CORRELATION_ID_HEADER, correlationId);
+            MDC.put(XmlToJsonService.CORRELATION_ID, correlationId);
+            try {
+                convert(exchange);
+            } finally {
+                MDC.remove(XmlToJsonService.CORRELATION_ID);
+            }
+        }
+    }
+
+    /**
+     * Declared request body length, or -1 for chunked or invalid lengths, which are checked while reading
+     */
+    private static long contentLength(Headers headers) {
+        String contentLength = headers.getFirst("Content-Length");
+        try {
+            return contentLength == null ? -1 : Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void convert(HttpExchange exchange) throws IOException {
+        Projection projection;
+        try {
+            projection = projection(exchange.getRequestURI().getRawQuery());
+        } catch (IllegalArgumentException e) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            sendText(exchange, 400, e.getMessage());
+            return;
+        }
+        OutputFormat format = outputFormat(exchange.getRequestHeaders());
+        exchange.getResponseHeaders().set("Content-Type", format.isBinary()
+                ? format.getContentType()
+                : format.getContentType() + "; charset=UTF-8");
+        ChunkedResponse response = new ChunkedResponse(exchange);
+        // Chunked requests declare no length up front, the body is cut off while it is read
+        CountingStreams.Input requestBody = new CountingStreams.Input(exchange.getRequestBody(), maxRequestBytes);
+        active.incrementAndGet();
+        try {
+            service.processXml(requestBody, charset(exchange.getRequestHeaders()), response, format, projection);
+            response.finish();
+        } catch (RuntimeException e) {
+            failed.increment();
+            if (response.isStarted()) {
+                // Too late for an error status, cut the response short so the client sees it failed
+                throw new IOException("Conversion failed after the response was started", e);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            if (requestBody.isExceeded()) {
+                sendText(exchange, 413, "Request body exceeds " + maxRequestBytes + " bytes");
+            } else {
+                sendText(exchange, statusFor(e), e.getMessage());
+            }
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * 413 for documents over the converter limits, 400 for malformed XML, 500 for anything else
+     */
+    private static int statusFor(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof XmlToJsonConverter.LimitExceededException) {
+                return 413;
+            }
+            if (cause instanceof XMLStreamException || cause instanceof SAXException) {
+                return 400;
+            }
+            if (cause.getCause() == null && cause instanceof XmlToJsonConverter.XmlToJsonConverterException) {
+                // Rejected by the converter itself, e.g. a DOCTYPE declaration
+                return 400;
+            }
+        }
+        return 500;
+    }
+
+    /**
+     * Projection from the include and exclude query parameters, or the configured one without them
+     */
+    private Projection projection(String rawQuery) {
+        if (rawQuery == null) {
+            return current().getProjection();
+        }
+        String includes = null;
+        String excludes = null;
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8);
+            if ("include".equals(name)) {
+                includes = includes == null ? value : includes + "," + value;
+            } else if ("exclude".equals(name)) {
+                excludes = excludes == null ? value : excludes + "," + value;
+            }
+        }
+        return includes == null && excludes == null ? current().getProjection() : Projection.parse(includes, excludes);
+    }
+
+    private OutputFormat outputFormat(Headers headers) {
+        String accept = headers.getFirst("Accept");
+        if (accept != null) {
+            String accepted = accept.toLowerCase(Locale.ROOT);
+            for (OutputFormat format : OutputFormat.values()) {
+                if (accepted.contains(format.getContentType())) {
+                    return format;
+                }
+            }
+        }
+        return current().getOutputFormat();
+    }
+
+    /**
+     * Charset parameter of the Content-Type header, or null to detect it from the document
+     */
+    private static String charset(Headers headers) {
+        String contentType = headers.getFirst("Content-Type");
+        if (contentType == null) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                return trimmed.substring(8).replace("\"", "").trim();
+            }
+        }
+        return null;
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            sendBytes(exchange, 200, "{\"status\":\"UP\"}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (JsonGenerator out = JSON_FACTORY.createGenerator(body)) {
+                out.writeStartObject();
+                out.writeObjectFieldStart("server");
+                out.writeNumberField("requests", requests.sum());
+                out.writeNumberField("active", active.get());
+                out.writeNumberField("rejected", rejected.sum());
+                out.writeNumberField("failed", failed.sum());
+                out.writeEndObject();
+
+                XmlParserPool pool = current().getParserPool();
+                out.writeObjectFieldStart("parserPool");
+                out.writeNumberField("idle", pool.getIdleCount());
+                out.writeNumberField("hits", pool.getHitCount());
+                out.writeNumberField("misses", pool.getMissCount());
+                out.writeEndObject();
+
+                ConversionCache cache = service.getCache();
+                if (cache != null) {
+                    out.writeObjectFieldStart("cache");
+                    out.writeNumberField("hits", cache.getHitCount());
+                    out.writeNumberField("misses", cache.getMissCount());
+                    out.writeNumberField("evictions", cache.getEvictionCount());
+                    out.writeNumberField("expirations", cache.getExpirationCount());
+                    out.writeNumberField("bytes", cache.getSizeInBytes());
+                    out.writeEndObject();
+                }
+
+                ConversionMetrics metrics = current().getMetrics();
+                if (metrics instanceof HistogramMetrics) {
+                    writeConversionMetrics((HistogramMetrics) metrics, out);
+                }
+                out.writeEndObject();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            sendBytes(exchange, 200, body.toByteArray());
+        }
+    }
+
+    private static void writeConversionMetrics(HistogramMetrics metrics, JsonGenerator out) throws IOException {
+        out.writeObjectFieldStart("conversions");
+        out.writeNumberField("count", metrics.getConversionCount());
+        out.writeNumberField("errors", metrics.getErrorCount());
+        out.writeNumberField("inputSize", metrics.getInputSizeTotal());
+        out.writeNumberField("outputSize", metrics.getOutputSizeTotal());
+        out.writeNumberField("elements", metrics.getElementCount());
+        out.writeNumberField("matches", metrics.getMatchCount());
+        writeCounts("errorsByCause", metrics.getErrorsByCause(), out);
+        writeCounts("latencyMicros", metrics.getLatencyMicros(), out);
+        writeCounts("inputSizes", metrics.getInputSizes(), out);
+        out.writeEndObject();
+    }
+
+    private static void writeCounts(String name, Map<String, Long> counts, JsonGenerator out) throws IOException {
+        out.writeObjectFieldStart(name);
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            out.writeNumberField(count.getKey(), count.getValue());
+        }
+        out.writeEndObject();
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        if (!exchange.getResponseHeaders().containsKey("Content-Type")) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        }
+        sendBytes(exchange, status, String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendBytes(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Response body that sends the 200 status with chunked encoding on the first write, so that a
+     * conversion failing before any output can still answer with an error status
+     */
+    private static final class ChunkedResponse extends OutputStream {
+        private final HttpExchange exchange;
+        private OutputStream body;
+
+        ChunkedResponse(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        boolean isStarted() {
+            return body != null;
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            return body;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        /**
+         * Ends the chunked body, sending the headers first if nothing was written
+         */
+        void finish() throws IOException {
+            body().close();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package org.example.service;
+
+import org.example.converter.OutputFormat;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Content-addressed cache of conversion results, keyed by the SHA-256 digest of the XML input
+ * together with the converter's configuration fingerprint and the output format. A hit requires
+ * equal digests, so crafted inputs cannot be answered with another input's result; the hash
+ * spreading keys over segments and buckets is a MurmurHash3 seeded randomly per cache, so its
+ * collisions cannot be precomputed either.
+ *
+ * Entries are spread over independently locked segments, each an LRU list evicting its oldest
+ * entries once it holds more than its share of the byte budget. Entries older than the TTL are
+ * dropped when they are looked up.
+ */
+public final class ConversionCache {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final Segment[] segments;
+    private final long seed = new SecureRandom().nextLong();
+    private final long segmentBudget;
+    private final long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Creates a cache holding at most {@code maxBytes} of results, split over {@code segmentCount}
+     * segments. A TTL of zero or less keeps entries until they are evicted.
+     */
+    public ConversionCache(long maxBytes, long ttlMillis, int segmentCount) {
+        if (maxBytes <= 0 || segmentCount <= 0) {
+            throw new IllegalArgumentException("Cache size and segment count must be positive");
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+        this.segmentBudget = Math.max(1, maxBytes / segmentCount);
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000L : 0;
+    }
+
+    /**
+     * Cache key of an XML input converted by a converter with the given fingerprint
+     */
+    Key key(String xmlInput, String configFingerprint, OutputFormat format) {
+        long h1 = seed ^ configFingerprint.hashCode();
+        long h2 = seed;
+        int length = xmlInput.length();
+        int blocks = length / 8;
+
+        // MurmurHash3 x64 128 over the UTF-16 code units, four per 64-bit word
+        for (int i = 0; i < blocks; i++) {
+            int offset = i * 8;
+            long k1 = word(xmlInput, offset);
+            long k2 = word(xmlInput, offset + 4);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = blocks * 8, shift = 0; i < length; i++, shift += 16) {
+            if (shift < 64) {
+                k1 |= (long) xmlInput.charAt(i) << shift;
+            } else {
+                k2 |= (long) xmlInput.charAt(i) << (shift - 64);
+            }
+        }
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        return new Key(h1, h2, sha256(xmlInput), configFingerprint, format);
+    }
+
+    /**
+     * SHA-256 of the UTF-16 code units, fed to the digest in chunks rather than as one encoded copy
+     */
+    private static byte[] sha256(String s) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        byte[] chunk = new byte[Math.min(8192, 2 * s.length())];
+        int filled = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (filled == chunk.length) {
+                digest.update(chunk, 0, filled);
+                filled = 0;
+            }
+            char c = s.charAt(i);
+            chunk[filled++] = (byte) c;
+            chunk[filled++] = (byte) (c >>> 8);
+        }
+        digest.update(chunk, 0, filled);
+        return digest.digest();
+    }
+
+    private static long word(String s, int offset) {
+        return s.charAt(offset)
+                | (long) s.charAt(offset + 1) << 16
+                | (long) s.charAt(offset + 2) << 32
+                | (long) s.charAt(offset + 3) << 48;
+    }
+
+    private static long mixK1(long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    private static long mixK2(long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    /**
+     * Cached result for the key, a String for JSON text or a byte[] for other formats, or null
+     */
+    Object get(Key key) {
+        Object value = segmentFor(key).get(key, System.nanoTime());
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    void put(Key key, Object value) {
+        long weight = value instanceof byte[] ? ((byte[]) value).length : 2L * ((String) value).length();
+        if (weight <= segmentBudget) {
+            segmentFor(key).put(key, new Entry(value, weight, System.nanoTime()));
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        return segments[(int) ((key.h1 >>> 1) % segments.length)];
+    }
+
+    /**
+     * Drops all cached results
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of entries dropped to stay within the byte budget
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of entries dropped because they outlived the TTL
+     */
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * Estimated size of the cached results in bytes
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "ConversionCache{hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount()
+                + ", bytes=" + getSizeInBytes() + "}";
+    }
+
+    static final class Key {
+        private final long h1;
+        private final long h2;
+        private final byte[] digest;
+        private final String configFingerprint;
+        private final OutputFormat format;
+
+        private Key(long h1, long h2, byte[] digest, String configFingerprint, OutputFormat format) {
+            this.h1 = h1;
+            this.h2 = h2;
+            this.digest = digest;
+            this.configFingerprint = configFingerprint;
+            this.format = format;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return h1 == other.h1 && h2 == other.h2 && configFingerprint.equals(other.configFingerprint)
+                    && format == other.format && Arrays.equals(digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (h2 ^ (h2 >>> 32));
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long weight;
+        final long createdAt;
+
+        Entry(Object value, long weight, long createdAt) {
+            this.value = value;
+            this.weight = weight;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * LRU list of one share of the entries, guarded by its own lock
+     */
+    private final class Segment {
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+
+        synchronized Object get(Key key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (ttlNanos > 0 && now - entry.createdAt > ttlNanos) {
+                entries.remove(key);
+                size -= entry.weight;
+                expirations.increment();
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void put(Key key, Entry entry) {
+            Entry previous = entries.put(key, entry);
+            size += entry.weight - (previous == null ? 0 : previous.weight);
+
+            // Evict least recently used entries until the segment fits its budget again
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (size > segmentBudget && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                size -= evicted.weight;
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            size = 0;
+        }
+
+        synchronized long size() {
+            return size;
+        }
+    }
+}
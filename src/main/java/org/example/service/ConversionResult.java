@@ -0,0 +1,56 @@
+package org.example.service;
+
+/**
+ * Outcome of converting one item of a batch: either the JSON output or the error it failed with
+ */
+public final class ConversionResult {
+    private final int index;
+    private final String json;
+    private final Throwable error;
+
+    private ConversionResult(int index, String json, Throwable error) {
+        this.index = index;
+        this.json = json;
+        this.error = error;
+    }
+
+    static ConversionResult success(int index, String json) {
+        return new ConversionResult(index, json, null);
+    }
+
+    static ConversionResult failure(int index, Throwable error) {
+        return new ConversionResult(index, null, error);
+    }
+
+    /**
+     * Position of the item in the batch input
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Converted JSON, or null if the conversion failed
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Error the conversion failed with, or null on success
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess()
+                ? "ConversionResult{index=" + index + ", success}"
+                : "ConversionResult{index=" + index + ", error=" + error + "}";
+    }
+}
@@ -0,0 +1,202 @@
+package org.example.service;
+
+import org.example.converter.XmlToJsonConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * One run of the bulk file mode: splits a large XML document into records and writes one JSON
+ * object per line (NDJSON), in record order.
+ *
+ * A reader thread streams the input and copies every record element into its own small XML
+ * document. Records are converted on the executor and the calling thread writes the results in
+ * order. At most {@code window} records are buffered or in conversion at once, so memory use
+ * depends on the record size, not the file size.
+ */
+final class NdjsonFileConversion {
+    private static final Logger logger = LoggerFactory.getLogger(NdjsonFileConversion.class);
+
+    // Marks the end of the records in the queue
+    private static final CompletableFuture<byte[]> END = CompletableFuture.completedFuture(null);
+
+    private final XmlToJsonConverter converter;
+    private final Executor executor;
+    private final String recordElement;
+    private final boolean strict;
+    private final BlockingQueue<CompletableFuture<byte[]>> pending;
+    private final XMLOutputFactory outputFactory;
+    private volatile Exception readError;
+
+    NdjsonFileConversion(XmlToJsonConverter converter, Executor executor, String recordElement,
+                         int window, boolean strict) {
+        this.converter = converter;
+        this.executor = executor;
+        this.recordElement = recordElement;
+        this.strict = strict;
+        this.pending = new ArrayBlockingQueue<>(window);
+        this.outputFactory = XMLOutputFactory.newInstance();
+    }
+
+    /**
+     * Converts all records and returns the number of lines written. In strict mode the first
+     * record that fails to convert aborts the run, otherwise it is logged and left out.
+     */
+    long run(InputStream xmlInput, OutputStream ndjsonOutput)
+            throws XmlToJsonConverter.XmlToJsonConverterException, IOException {
+        Thread reader = new Thread(() -> readRecords(xmlInput), "ndjson-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long record = 0;
+        long written = 0;
+        try {
+            for (CompletableFuture<byte[]> result = take(); result != END; result = take()) {
+                record++;
+                byte[] json;
+                try {
+                    json = result.join();
+                } catch (CompletionException e) {
+                    if (strict) {
+                        throw new XmlToJsonConverter.XmlToJsonConverterException(
+                                "Failed to convert record " + record, e.getCause());
+                    }
+                    logger.warn("Skipping record {} that failed to convert", record, e.getCause());
+                    continue;
+                }
+                ndjsonOutput.write(json);
+                ndjsonOutput.write('\n');
+                written++;
+            }
+            if (readError != null) {
+                throw new XmlToJsonConverter.XmlToJsonConverterException(
+                        "Failed to read XML records after record " + record, readError);
+            }
+        } finally {
+            // Stops the reader if the run was aborted
+            reader.interrupt();
+        }
+        ndjsonOutput.flush();
+        logger.info("Converted {} of {} {} records to NDJSON", written, record, recordElement);
+        return written;
+    }
+
+    private CompletableFuture<byte[]> take() throws XmlToJsonConverter.XmlToJsonConverterException {
+        try {
+            return pending.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XmlToJsonConverter.XmlToJsonConverterException("Interrupted while writing NDJSON records", e);
+        }
+    }
+
+    private void readRecords(InputStream xmlInput) {
+        try {
+            XMLStreamReader reader = converter.getParserPool().createStreamReader(new InputSource(xmlInput));
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && recordElement.equals(localPart(reader.getLocalName()))) {
+                        byte[] record = copyRecord(reader);
+                        pending.put(CompletableFuture.supplyAsync(() -> convert(record), executor));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (InterruptedException e) {
+            // The writer gave up, nobody is waiting for more records
+            return;
+        } catch (Exception e) {
+            readError = e;
+        }
+        try {
+            pending.put(END);
+        } catch (InterruptedException e) {
+            // The writer gave up
+        }
+    }
+
+    private byte[] convert(byte[] record) {
+        try {
+            return converter.convertXmlToJsonLine(new ByteArrayInputStream(record));
+        } catch (XmlToJsonConverter.XmlToJsonConverterException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Copies the element the reader is positioned on, with everything below it, into a standalone
+     * UTF-8 document. Leaves the reader on the element's end tag.
+     */
+    private byte[] copyRecord(XMLStreamReader reader) throws XMLStreamException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(bytes, "UTF-8");
+        int depth = 0;
+        while (true) {
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    copyStartElement(reader, writer);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    writer.writeEndElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                default:
+                    // Comments and processing instructions are not converted
+                    break;
+            }
+            if (depth == 0) {
+                break;
+            }
+            reader.next();
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Copies a start tag with its names as written. The parser is not namespace-aware, like the
+     * converter, so prefixes are part of the names and xmlns declarations are plain attributes.
+     */
+    private static void copyStartElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement(reader.getLocalName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String localName = reader.getAttributeLocalName(i);
+            String name = prefix == null || prefix.isEmpty() ? localName
+                    : localName == null || localName.isEmpty() ? prefix
+                    : prefix + ":" + localName;
+            writer.writeAttribute(name, reader.getAttributeValue(i));
+        }
+    }
+
+    /**
+     * Name without its prefix, records are matched by local name
+     */
+    private static String localPart(String name) {
+        return name.substring(name.indexOf(':') + 1);
+    }
+}
@@ -1,27 +1,506 @@
 package org.example.service;
+import org.example.converter.ConverterRegistry;
+import org.example.converter.OutputFormat;
+import org.example.converter.Projection;
+import org.example.converter.ShapeRegistry;
 import org.example.converter.XmlToJsonConverter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
-public class XmlToJsonService {
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+public class XmlToJsonService implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(XmlToJsonService.class);
+    /** MDC key carrying the id of the request a log line belongs to */
+    public static final String CORRELATION_ID = "correlationId";
+    // Converter the service settings are read from, and the one used without a registry
     private final XmlToJsonConverter converter;
+    private final ConverterRegistry registry;
+    private final String profile;
+    private final int maxInFlight;
+    private final boolean orderedResults;
+    private final Semaphore inFlight;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final ConversionCache cache;
+    private final double successSampleRate;
 
+    /**
+     * Service on the shared default converter of the classpath configuration
+     */
     public XmlToJsonService() {
-        this.converter = new XmlToJsonConverter();
+        this(ConverterRegistry.getDefault(), ConverterRegistry.DEFAULT_PROFILE);
+    }
+
+    /**
+     * Service on the current converter of a registry profile, following its reloads
+     */
+    public XmlToJsonService(ConverterRegistry registry, String profile) {
+        this(registry.get(profile), registry, profile, null);
+    }
+
+    /**
+     * Service around an existing converter, with the batch executor taken from its configuration
+     */
+    public XmlToJsonService(XmlToJsonConverter converter) {
+        this(converter, null);
+    }
+
+    /**
+     * Service running batch and async conversions on the given executor, or on the configured
+     * one when null. An executor passed in is not shut down by {@link #close()}.
+     */
+    public XmlToJsonService(XmlToJsonConverter converter, Executor executor) {
+        this(converter, null, null, executor);
+    }
+
+    private XmlToJsonService(XmlToJsonConverter converter, ConverterRegistry registry, String profile,
+                             Executor executor) {
+        this.converter = converter;
+        this.registry = registry;
+        this.profile = profile;
+        this.maxInFlight = Integer.parseInt(converter.getConfigProperty("batch.max.in.flight", "256"));
+        this.orderedResults = Boolean.parseBoolean(converter.getConfigProperty("batch.ordered", "true"));
+        this.inFlight = new Semaphore(maxInFlight);
+        this.ownedExecutor = executor == null ? createExecutor() : null;
+        this.executor = executor == null ? ownedExecutor : executor;
+        this.cache = createCache();
+        this.successSampleRate = Double.parseDouble(converter.getConfigProperty("logging.success.sample.rate", "0.01"));
+    }
+
+    /**
+     * Converter for the next conversion, taken once per call so a reload never changes it midway
+     */
+    private XmlToJsonConverter converter() {
+        return registry == null ? converter : registry.get(profile);
+    }
+
+    /**
+     * Creates the result cache when cache.enabled is set
+     */
+    private ConversionCache createCache() {
+        if (!Boolean.parseBoolean(converter.getConfigProperty("cache.enabled", "false"))) {
+            return null;
+        }
+        return new ConversionCache(
+                Long.parseLong(converter.getConfigProperty("cache.max.bytes", "67108864")),
+                Long.parseLong(converter.getConfigProperty("cache.ttl.seconds", "300")) * 1000L,
+                Integer.parseInt(converter.getConfigProperty("cache.segments", "16")));
+    }
+
+    /**
+     * Creates the configured batch executor: virtual threads when available (Java 21+) unless
+     * batch.executor=forkjoin, otherwise a ForkJoinPool of batch.parallelism threads
+     */
+    private ExecutorService createExecutor() {
+        String type = converter.getConfigProperty("batch.executor", "auto").trim();
+        if (!"forkjoin".equalsIgnoreCase(type)) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                if ("virtual".equalsIgnoreCase(type)) {
+                    logger.warn("Virtual threads are not available on this JVM, using a ForkJoinPool");
+                }
+            }
+        }
+        String parallelism = converter.getConfigProperty("batch.parallelism", "").trim();
+        return new ForkJoinPool(parallelism.isEmpty()
+                ? Runtime.getRuntime().availableProcessors()
+                : Integer.parseInt(parallelism));
     }
 
     /**
      * Processes the XML input and returns the converted JSON
      */
     public String processXml(String xmlInput) {
-        logger.info("Processing XML input");
+        return atBoundary(() -> convertXmlToJson(xmlInput));
+    }
+
+    /**
+     * Processes the XML input and returns it serialized in the given format
+     */
+    public byte[] processXml(String xmlInput, OutputFormat format) {
+        return atBoundary(() -> {
+            XmlToJsonConverter converter = converter();
+            if (!cacheable(converter)) {
+                return converter.convertXml(xmlInput, format);
+            }
+            ConversionCache.Key key = cache.key(xmlInput, converter.getConfigFingerprint(), format);
+            byte[] output = (byte[]) cache.get(key);
+            if (output == null) {
+                output = converter.convertXml(xmlInput, format);
+                cache.put(key, output);
+            }
+            // Callers may modify the array they get
+            return output.clone();
+        });
+    }
+
+    /**
+     * Processes XML bytes from the input stream and writes them in the configured output format
+     * (UTF-8 JSON by default) to the output stream. The input encoding is detected from the document.
+     * Neither stream is closed.
+     */
+    public void processXml(InputStream xmlInput, OutputStream jsonOutput) {
+        processXml(xmlInput, null, jsonOutput);
+    }
+
+    /**
+     * Processes XML bytes in the given encoding, or detected from the document when null
+     */
+    public void processXml(InputStream xmlInput, String encoding, OutputStream jsonOutput) {
+        atBoundary(() -> {
+            converter().convertXmlToJson(xmlInput, encoding, jsonOutput);
+            return null;
+        });
+    }
+
+    /**
+     * Processes XML bytes in the given encoding, or detected from the document when null, and writes
+     * them in the given output format
+     */
+    public void processXml(InputStream xmlInput, String encoding, OutputStream output, OutputFormat format) {
+        atBoundary(() -> {
+            converter().convertXml(xmlInput, encoding, output, format);
+            return null;
+        });
+    }
+
+    /**
+     * Processes only the parts of the XML selected by the projection and writes them in the given
+     * output format
+     */
+    public void processXml(InputStream xmlInput, String encoding, OutputStream output, OutputFormat format,
+                           Projection projection) {
+        atBoundary(() -> {
+            converter().convertXml(xmlInput, encoding, output, format, projection);
+            return null;
+        });
+    }
+
+    /**
+     * Runs one conversion at the service boundary: tags its log lines with a correlation id (kept
+     * if the caller already set one), logs a sampled share of the successes and logs a failure,
+     * checked or not, exactly once before rethrowing it unchecked
+     */
+    private <T> T atBoundary(Conversion<T> conversion) {
+        boolean ownCorrelationId = MDC.get(CORRELATION_ID) == null;
+        if (ownCorrelationId) {
+            MDC.put(CORRELATION_ID, newCorrelationId());
+        }
         try {
-            return converter.convertXmlToJson(xmlInput);
+            long start = System.nanoTime();
+            T result = conversion.run();
+            if (successSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < successSampleRate) {
+                logger.info("Processed XML in {} us", TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+            return result;
         } catch (XmlToJsonConverter.XmlToJsonConverterException e) {
             logger.error("Error processing XML", e);
-            throw new RuntimeException("Failed to process XML: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to process XML [" + MDC.get(CORRELATION_ID) + "]: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            // Unknown profiles, invalid projections and unchecked parser or generator failures
+            logger.error("Error processing XML", e);
+            throw e;
+        } finally {
+            if (ownCorrelationId) {
+                MDC.remove(CORRELATION_ID);
+            }
+        }
+    }
+
+    /**
+     * Random 64-bit id, cheap enough for every request
+     */
+    public static String newCorrelationId() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    @FunctionalInterface
+    private interface Conversion<T> {
+        T run() throws XmlToJsonConverter.XmlToJsonConverterException;
+    }
+
+    /**
+     * Processes XML read from a channel and writes JSON to another channel. Neither channel is closed.
+     */
+    public void processXml(ReadableByteChannel xmlInput, WritableByteChannel jsonOutput) {
+        processXml(Channels.newInputStream(xmlInput), Channels.newOutputStream(jsonOutput));
+    }
+
+    /**
+     * Processes the remaining bytes of the buffer and writes JSON to the output stream.
+     * The buffer's position is not changed.
+     */
+    public void processXml(ByteBuffer xmlInput, OutputStream jsonOutput) {
+        processXml(asInputStream(xmlInput), jsonOutput);
+    }
+
+    /**
+     * Processes the remaining bytes of the buffer and writes JSON to the channel
+     */
+    public void processXml(ByteBuffer xmlInput, WritableByteChannel jsonOutput) {
+        processXml(asInputStream(xmlInput), Channels.newOutputStream(jsonOutput));
+    }
+
+    /**
+     * Converts a large XML file holding many bulk.record.element records to NDJSON, one JSON object
+     * per line in record order. Returns the number of records written.
+     */
+    public long processFileToNdjson(Path xmlFile, Path ndjsonFile) {
+        return processFileToNdjson(xmlFile, ndjsonFile,
+                converter().getConfigProperty("bulk.record.element", "Response").trim());
+    }
+
+    /**
+     * Converts every element with the given local name in the XML file to one line of NDJSON.
+     * The file is streamed and records are converted on the batch executor, keeping at most
+     * bulk.window records in memory.
+     */
+    public long processFileToNdjson(Path xmlFile, Path ndjsonFile, String recordElement) {
+        logger.info("Processing XML file {} to NDJSON {}", xmlFile, ndjsonFile);
+        XmlToJsonConverter converter = converter();
+        int bufferSize = Integer.parseInt(converter.getConfigProperty("converter.buffer.size", "8192"));
+        NdjsonFileConversion conversion = new NdjsonFileConversion(converter, executor, recordElement,
+                Integer.parseInt(converter.getConfigProperty("bulk.window", "256")),
+                Boolean.parseBoolean(converter.getConfigProperty("feature.error.handling.strict", "true")));
+        try (InputStream xmlInput = new BufferedInputStream(Files.newInputStream(xmlFile), bufferSize);
+             OutputStream ndjsonOutput = new BufferedOutputStream(Files.newOutputStream(ndjsonFile), bufferSize)) {
+            return conversion.run(xmlInput, ndjsonOutput);
+        } catch (XmlToJsonConverter.XmlToJsonConverterException | IOException e) {
+            logger.error("Error processing XML file {}", xmlFile, e);
+            throw new RuntimeException("Failed to process XML file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Converts the XML input on the batch executor. Blocks while batch.max.in.flight
+     * conversions are already running.
+     */
+    public CompletableFuture<String> processAsync(String xmlInput) {
+        acquirePermit();
+        Map<String, String> logContext = MDC.getCopyOfContextMap();
+        try {
+            return CompletableFuture.supplyAsync(() -> withLogContext(logContext, () -> processXml(xmlInput)), executor)
+                    .whenComplete((json, error) -> inFlight.release());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Converts all inputs in parallel. Failed items are reported in their result instead of
+     * failing the batch. Results are in input order unless batch.ordered=false.
+     */
+    public List<ConversionResult> processAll(List<String> xmlInputs) {
+        return processAll(xmlInputs.stream(), orderedResults);
+    }
+
+    /**
+     * Converts all inputs in parallel, returning results in input order or completion order
+     */
+    public List<ConversionResult> processAll(Stream<String> xmlInputs, boolean ordered) {
+        List<ConversionResult> results = new ArrayList<>();
+        processAll(xmlInputs, ordered, results::add);
+        return results;
+    }
+
+    /**
+     * Converts the inputs in parallel and hands each result to the consumer on the calling thread.
+     * The stream is consumed lazily and at most batch.max.in.flight results are pending at once,
+     * so arbitrarily long streams are processed in bounded memory.
+     */
+    public void processAll(Stream<String> xmlInputs, boolean ordered, Consumer<ConversionResult> resultConsumer) {
+        if (ordered) {
+            processOrdered(xmlInputs.iterator(), resultConsumer);
+        } else {
+            processUnordered(xmlInputs.iterator(), resultConsumer);
+        }
+    }
+
+    private void processOrdered(Iterator<String> xmlInputs, Consumer<ConversionResult> resultConsumer) {
+        Deque<CompletableFuture<ConversionResult>> pending = new ArrayDeque<>();
+        for (int index = 0; xmlInputs.hasNext(); index++) {
+            // Hand over completed results first, waiting for the oldest one when the window is full
+            while (!pending.isEmpty() && (pending.size() >= maxInFlight || pending.peekFirst().isDone())) {
+                resultConsumer.accept(pending.pollFirst().join());
+            }
+            pending.addLast(submit(index, xmlInputs.next(), null));
+        }
+        while (!pending.isEmpty()) {
+            resultConsumer.accept(pending.pollFirst().join());
+        }
+    }
+
+    private void processUnordered(Iterator<String> xmlInputs, Consumer<ConversionResult> resultConsumer) {
+        BlockingQueue<ConversionResult> completed = new LinkedBlockingQueue<>();
+        int pending = 0;
+        for (int index = 0; xmlInputs.hasNext(); index++) {
+            for (ConversionResult result = completed.poll(); result != null; result = completed.poll()) {
+                resultConsumer.accept(result);
+                pending--;
+            }
+            if (pending >= maxInFlight) {
+                resultConsumer.accept(takeResult(completed));
+                pending--;
+            }
+            submit(index, xmlInputs.next(), completed);
+            pending++;
+        }
+        for (; pending > 0; pending--) {
+            resultConsumer.accept(takeResult(completed));
+        }
+    }
+
+    /**
+     * Submits one batch item, capturing any failure in its result
+     */
+    private CompletableFuture<ConversionResult> submit(int index, String xmlInput,
+                                                       BlockingQueue<ConversionResult> completed) {
+        acquirePermit();
+        Map<String, String> logContext = MDC.getCopyOfContextMap();
+        try {
+            return CompletableFuture.supplyAsync(() -> withLogContext(logContext, () -> {
+                ConversionResult result;
+                try {
+                    result = ConversionResult.success(index, processXml(xmlInput));
+                } catch (Exception e) {
+                    // Already logged with its correlation id by processXml
+                    result = ConversionResult.failure(index, e.getCause() != null ? e.getCause() : e);
+                } finally {
+                    inFlight.release();
+                }
+                if (completed != null) {
+                    completed.add(result);
+                }
+                return result;
+            }), executor);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether results may come from the cache: not while the converter is still learning the document
+     * shape, since the output changes once it is learned and the documents must go through the converter
+     */
+    private boolean cacheable(XmlToJsonConverter converter) {
+        ShapeRegistry shapes = converter.getShapeRegistry();
+        return cache != null && (shapes == null || shapes.isLearningComplete());
+    }
+
+    /**
+     * Converts to JSON text, answering from the result cache when it is enabled
+     */
+    private String convertXmlToJson(String xmlInput) throws XmlToJsonConverter.XmlToJsonConverterException {
+        XmlToJsonConverter converter = converter();
+        if (!cacheable(converter)) {
+            return converter.convertXmlToJson(xmlInput);
+        }
+        // The JSON text API is cached apart from the byte formats
+        ConversionCache.Key key = cache.key(xmlInput, converter.getConfigFingerprint(), null);
+        String json = (String) cache.get(key);
+        if (json == null) {
+            json = converter.convertXmlToJson(xmlInput);
+            cache.put(key, json);
+        }
+        return json;
+    }
+
+    /**
+     * Result cache statistics and control, or null when cache.enabled is not set
+     */
+    public ConversionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Runs the task with the submitting thread's MDC, so batch and async log lines keep its correlation id
+     */
+    private static <T> T withLogContext(Map<String, String> logContext, Supplier<T> task) {
+        if (logContext == null) {
+            return task.get();
+        }
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        MDC.setContextMap(logContext);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                MDC.clear();
+            } else {
+                MDC.setContextMap(previous);
+            }
+        }
+    }
+
+    private void acquirePermit() {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a conversion slot", e);
+        }
+    }
+
+    private static ConversionResult takeResult(BlockingQueue<ConversionResult> completed) {
+        try {
+            return completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for batch results", e);
+        }
+    }
+
+    /**
+     * Shuts down the batch executor if this service created it
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private static InputStream asInputStream(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            // Heap buffers are read in place, without copying the backing array
+            return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
         }
+        return new ByteBufferInputStream(buffer.duplicate());
     }
 }
@@ -0,0 +1,52 @@
+package org.example.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConvertCommandTest {
+    private static final String XML = "<R><ResultBlock><A>1</A></ResultBlock></R>";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void convertsFilesNextToTheirInputs() throws Exception {
+        Path input = Files.writeString(directory.resolve("a.xml"), XML);
+        Files.writeString(directory.resolve("b.xml"), XML);
+
+        assertEquals(0, ConvertCommand.run(List.of(directory.toString())));
+
+        assertTrue(Files.readString(directory.resolve("a.json")).contains("\"A\":\"1\""));
+        assertTrue(Files.exists(directory.resolve("b.json")));
+        assertEquals(XML, Files.readString(input));
+    }
+
+    @Test
+    void refusesAnOutputOverwritingItsInput() throws Exception {
+        Path input = Files.writeString(directory.resolve("a.xml"), XML);
+
+        assertEquals(2, ConvertCommand.run(List.of("-o", input.toString(), input.toString())));
+        assertEquals(XML, Files.readString(input));
+    }
+
+    @Test
+    void refusesInputsSharingAnOutput() throws Exception {
+        Path first = Files.createDirectories(directory.resolve("first"));
+        Path second = Files.createDirectories(directory.resolve("second"));
+        Files.writeString(first.resolve("a.xml"), XML);
+        Files.writeString(second.resolve("a.xml"), XML);
+        Path output = Files.createDirectories(directory.resolve("out"));
+
+        assertEquals(2, ConvertCommand.run(List.of("-o", output.toString(),
+                first.resolve("a.xml").toString(), second.resolve("a.xml").toString())));
+        assertFalse(Files.exists(output.resolve("a.json")));
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.converter;
+
+import org.example.server.ConversionServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionLimitsTest {
+
+    private static void assertExceeds(String limit, String xml, String... settings) {
+        for (String engine : TestConverters.ENGINES) {
+            XmlToJsonConverter converter = TestConverters.create(engine, settings);
+            XmlToJsonConverter.LimitExceededException e = assertThrows(
+                    XmlToJsonConverter.LimitExceededException.class, () -> converter.convertXmlToJson(xml), engine);
+            assertEquals(limit, e.getLimit(), engine);
+        }
+    }
+
+    @Test
+    void noLimitsByDefault() {
+        ConversionLimits limits = ConversionLimits.fromConfig(XmlToJsonConverter.loadProperties());
+        assertEquals(0, limits.getMaxDepth());
+        assertEquals(0, limits.getMaxElements());
+        assertEquals(0, limits.getMaxBytes());
+        assertEquals(0, limits.getMaxTextLength());
+        assertEquals(0, limits.getMaxAttributes());
+        assertEquals(0, ConversionLimits.fromConfig(new Properties()).getMaxDepth());
+    }
+
+    @Test
+    void serverProfileSetsTheDepthLimit() {
+        Properties config = ConversionServer.serverConfig(XmlToJsonConverter.loadProperties());
+        assertEquals(512, ConversionLimits.fromConfig(config).getMaxDepth());
+    }
+
+    @Test
+    void deepDocumentConvertsWithoutLimits() throws Exception {
+        String xml = TestConverters.deep(1_000);
+        for (String engine : TestConverters.ENGINES) {
+            assertTrue(TestConverters.create(engine).convertXmlToJson(xml).contains("\"Level\":\"x\""), engine);
+        }
+    }
+
+    @Test
+    void domEngineNeedsNoDeepStack() throws Exception {
+        String xml = TestConverters.deep(100_000);
+        XmlToJsonConverter converter = TestConverters.create("dom");
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // A recursive conversion of this depth overflows a small stack
+        Thread thread = new Thread(null, () -> {
+            try {
+                converter.convertXmlToJson(xml);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "deep-conversion", 512 * 1024);
+        thread.start();
+        thread.join();
+        assertNull(failure.get());
+    }
+
+    @Test
+    void depthLimit() {
+        assertExceeds("depth", TestConverters.deep(20), "limits.max.depth=10");
+    }
+
+    @Test
+    void depthLimitInsideMatchLists() {
+        assertExceeds("depth", "<R><ResultBlock><MatchDetails><Match><Score>" + TestConverters.deep(20)
+                + "</Score></Match></MatchDetails></ResultBlock></R>", "limits.max.depth=10");
+    }
+
+    @Test
+    void depthLimitInsideSkippedElements() {
+        assertExceeds("depth", "<R><Skipped>" + TestConverters.deep(20) + "</Skipped></R>",
+                "limits.max.depth=10", "element.rule.Skipped=skip");
+    }
+
+    @Test
+    void elementLimit() throws Exception {
+        String xml = "<R>" + "<A/>".repeat(9) + "</R>";
+        for (String engine : TestConverters.ENGINES) {
+            TestConverters.create(engine, "limits.max.elements=10").convertXmlToJson(xml);
+        }
+        assertExceeds("elements", "<R>" + "<A/>".repeat(10) + "</R>", "limits.max.elements=10");
+    }
+
+    @Test
+    void attributeLimitCountsNamespaceDeclarations() {
+        assertExceeds("attributes", "<R><Values><Value a='1' xmlns:b='u'>x</Value></Values></R>",
+                "limits.max.attributes=1");
+    }
+
+    @Test
+    void textLimitCountsTheTextBetweenTwoTags() throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            TestConverters.create(engine, "limits.max.text.length=5").convertXmlToJson("<R><A>12<B/>345</A></R>");
+        }
+        assertExceeds("text.length", "<R><A>12<!--c-->3<![CDATA[456]]></A></R>", "limits.max.text.length=5");
+    }
+
+    @Test
+    void byteLimit() throws Exception {
+        String xml = "<R>" + "<A>1</A>".repeat(100) + "</R>";
+        assertExceeds("bytes", xml, "limits.max.bytes=100");
+        for (String engine : TestConverters.ENGINES) {
+            for (String metrics : new String[]{"true", "false"}) {
+                XmlToJsonConverter converter = TestConverters.create(engine, "limits.max.bytes=100",
+                        "metrics.enabled=" + metrics);
+                XmlToJsonConverter.LimitExceededException e = assertThrows(
+                        XmlToJsonConverter.LimitExceededException.class,
+                        () -> converter.convertXmlToJson(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                                new ByteArrayOutputStream()), engine);
+                assertEquals("bytes", e.getLimit(), engine);
+            }
+        }
+    }
+
+    @Test
+    void countingInputFailsPastItsLimit() throws Exception {
+        CountingStreams.Input input = new CountingStreams.Input(new ByteArrayInputStream(new byte[10]), 8);
+        byte[] buffer = new byte[4];
+        assertEquals(4, input.read(buffer));
+        assertEquals(4, input.read(buffer));
+        assertThrows(IOException.class, () -> input.read(buffer));
+        assertTrue(input.isExceeded());
+        assertEquals(10, input.getCount());
+    }
+}
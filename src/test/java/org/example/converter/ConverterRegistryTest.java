@@ -0,0 +1,107 @@
+package org.example.converter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConverterRegistryTest {
+    private static final String XML = "<R><ResultBlock><A>1</A><B>2</B></ResultBlock></R>";
+
+    @TempDir
+    Path directory;
+
+    private ConverterRegistry registry() throws Exception {
+        return new ConverterRegistry(TestConverters.config("streaming"), directory);
+    }
+
+    @Test
+    void profilesOverrideTheBaseConfiguration() throws Exception {
+        Files.writeString(directory.resolve("tenant.properties"), "element.rule.A=skip\n");
+        ConverterRegistry registry = registry();
+
+        assertEquals(Set.of("default", "tenant"), registry.getProfiles());
+        assertEquals("{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},\"A\":\"1\",\"B\":\"2\"}}}",
+                registry.getDefaultConverter().convertXmlToJson(XML));
+        assertEquals("{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},\"B\":\"2\"}}}",
+                registry.get("tenant").convertXmlToJson(XML));
+        assertThrows(IllegalArgumentException.class, () -> registry.get("unknown"));
+    }
+
+    @Test
+    void reloadSwapsInTheChangedProfile() throws Exception {
+        Path file = directory.resolve("tenant.properties");
+        Files.writeString(file, "element.rule.A=skip\n");
+        ConverterRegistry registry = registry();
+        XmlToJsonConverter before = registry.get("tenant");
+
+        Files.writeString(file, "element.rule.B=skip\n");
+        registry.reload("tenant");
+
+        XmlToJsonConverter after = registry.get("tenant");
+        assertNotSame(before, after);
+        assertEquals("{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},\"A\":\"1\"}}}",
+                after.convertXmlToJson(XML));
+        // Conversions holding the previous converter still finish with it
+        assertEquals("{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},\"B\":\"2\"}}}",
+                before.convertXmlToJson(XML));
+    }
+
+    @Test
+    void reloadKeepsAnUnchangedProfile() throws Exception {
+        Files.writeString(directory.resolve("tenant.properties"), "element.rule.A=skip\n");
+        ConverterRegistry registry = registry();
+        XmlToJsonConverter before = registry.get("tenant");
+
+        registry.reload("tenant");
+
+        assertSame(before, registry.get("tenant"));
+    }
+
+    @Test
+    void reloadKeepsThePreviousConverterOnInvalidConfiguration() throws Exception {
+        Path file = directory.resolve("tenant.properties");
+        Files.writeString(file, "element.rule.A=skip\n");
+        ConverterRegistry registry = registry();
+        XmlToJsonConverter before = registry.get("tenant");
+
+        Files.writeString(file, "limits.max.depth=deep\n");
+        registry.reload("tenant");
+
+        assertSame(before, registry.get("tenant"));
+    }
+
+    @Test
+    void reloadAddsANewProfile() throws Exception {
+        ConverterRegistry registry = registry();
+        Files.writeString(directory.resolve("added.properties"), "element.rule.A=skip\n");
+
+        registry.reload("added");
+
+        assertEquals(Set.of("added", "default"), registry.getProfiles());
+    }
+
+    @Test
+    void reloadSwapsInProfilesWithCollidingStringHashes() throws Exception {
+        // "Aa" and "BB" share a String hash code, as do the swapped values below
+        Path file = directory.resolve("tenant.properties");
+        Files.writeString(file, "element.rule.A=skip\ncustom.first=Aa\ncustom.second=BB\n");
+        ConverterRegistry registry = registry();
+        XmlToJsonConverter before = registry.get("tenant");
+
+        Files.writeString(file, "element.rule.A=skip\ncustom.first=BB\ncustom.second=Aa\n");
+        registry.reload("tenant");
+
+        XmlToJsonConverter after = registry.get("tenant");
+        assertNotSame(before, after);
+        assertNotEquals(before.getConfigFingerprint(), after.getConfigFingerprint());
+    }
+}
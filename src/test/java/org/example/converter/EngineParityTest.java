@@ -0,0 +1,90 @@
+package org.example.converter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Golden outputs of the original DOM conversion, which the DOM and streaming engines must both
+ * reproduce byte for byte
+ */
+class EngineParityTest {
+
+    private static void assertConverts(String xml, String expectedJson, String... settings) throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            assertEquals(expectedJson, TestConverters.create(engine, settings).convertXmlToJson(xml), engine);
+        }
+    }
+
+    @Test
+    void matchNestedInMatchIsAlsoAnEntry() throws Exception {
+        assertConverts("<Response><ResultBlock><MatchDetails>"
+                        + "<Match><Score>30</Score><Match><Score>20</Score></Match></Match>"
+                        + "<Match><Score>10</Score></Match>"
+                        + "</MatchDetails></ResultBlock></Response>",
+                "{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"80\"},"
+                        + "\"MatchDetails\":{\"MatchDetails\":[{\"Match\":{\"Score\":\"30\",\"Match\":\"20\"}},"
+                        + "{\"Match\":{\"Score\":\"40\"}},{\"Match\":{\"Score\":\"10\"}}]}}}}",
+                "fixed.second.match.score=40");
+    }
+
+    @Test
+    void matchNestedInFieldsKeepsTheFieldText() throws Exception {
+        assertConverts("<R><ResultBlock><MatchDetails><Match>"
+                        + "<Score>1<Match><Score>2</Score><N>x</N></Match>3</Score>"
+                        + "<Info><Match><Score>4</Score></Match>t</Info>"
+                        + "</Match></MatchDetails></ResultBlock></R>",
+                "{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"6\"},"
+                        + "\"MatchDetails\":{\"MatchDetails\":[{\"Match\":{\"Score\":\"12x3\",\"Info\":\"4t\"}},"
+                        + "{\"Match\":{\"Score\":\"2\",\"N\":\"x\"}},{\"Match\":{\"Score\":\"4\"}}]}}}}");
+    }
+
+    @Test
+    void valueNestedInValueIsAlsoAnItem() throws Exception {
+        assertConverts("<R><ResultBlock><Values>"
+                        + "<Value>a<Value>b</Value>c</Value><Value><X>y<Value>z</Value></X></Value>"
+                        + "</Values></ResultBlock></R>",
+                "{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},"
+                        + "\"Values\":{\"Value\":[\"abc\",\"b\",\"yz\",\"z\"]}}}}");
+    }
+
+    @Test
+    void undeclaredPrefixesAreKeptInTheName() throws Exception {
+        assertConverts("<Response><x:a>1</x:a></Response>", "{\"Response\":{\"x:a\":\"1\"}}");
+        assertConverts("<x:R xmlns:x='u'><x:ResultBlock><y:Match y:k='v'>1</y:Match></x:ResultBlock></x:R>",
+                "{\"x:R\":{\"x:ResultBlock\":{\"y:Match\":\"1\"},\"xmlns:x\":\"u\"}}");
+    }
+
+    @Test
+    void attributesAreSortedByName() throws Exception {
+        assertConverts("<R z='1' xmlns:b='u' a='2' b:c='3' xmlns='d'>"
+                        + "<ResultBlock y='1' x='2' B='3'><A>t</A></ResultBlock></R>",
+                "{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},"
+                        + "\"A\":\"t\",\"B\":\"3\",\"x\":\"2\",\"y\":\"1\"},"
+                        + "\"a\":\"2\",\"b:c\":\"3\",\"xmlns\":\"d\",\"xmlns:b\":\"u\",\"z\":\"1\"}}");
+    }
+
+    @Test
+    void repeatedResultBlockGetsNoSummary() throws Exception {
+        assertConverts("<R><ResultBlock><Values/></ResultBlock>"
+                        + "<ResultBlock><q>1</q><MatchDetails><Match><Score>5</Score></Match></MatchDetails></ResultBlock></R>",
+                "{\"R\":{\"ResultBlock\":[{\"Values\":{}},"
+                        + "{\"q\":\"1\",\"MatchDetails\":{\"MatchDetails\":[{\"Match\":{\"Score\":\"5\"}}]}}]}}");
+    }
+
+    @Test
+    void resultBlockRootHoldsTheSummary() throws Exception {
+        // Not the original output, which had no summary: NDJSON records may be ResultBlock elements
+        assertConverts("<ResultBlock><A>1</A><ResultBlock><B>2</B></ResultBlock>"
+                        + "<MatchDetails><Match><Score>5</Score></Match></MatchDetails></ResultBlock>",
+                "{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"5\"},\"A\":\"1\",\"ResultBlock\":{\"B\":\"2\"},"
+                        + "\"MatchDetails\":{\"MatchDetails\":[{\"Match\":{\"Score\":\"5\"}}]}}}");
+    }
+
+    @Test
+    void repeatedElementsBecomeArraysOfObjects() throws Exception {
+        assertConverts("<R><ResultBlock><A>1</A><A>2</A><B x='1'><C/></B><A><D>q</D></A></ResultBlock></R>",
+                "{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},"
+                        + "\"A\":[{},{\"D\":\"q\"}],\"B\":{\"C\":null,\"x\":\"1\"}}}}");
+    }
+}
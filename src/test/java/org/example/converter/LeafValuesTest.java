@@ -0,0 +1,65 @@
+package org.example.converter;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LeafValuesTest {
+
+    private static Object value(String text, ConversionPlan.LeafType type) {
+        return LeafValues.value(text, type, "blank");
+    }
+
+    @Test
+    void valuesParseAsTheirTypeOrStayStrings() {
+        assertEquals(42L, value(" 42\n", ConversionPlan.LeafType.INTEGER));
+        assertEquals(-7L, value("-7", ConversionPlan.LeafType.INTEGER));
+        assertEquals(new BigInteger("1234567890123456789"), value("1234567890123456789", ConversionPlan.LeafType.INTEGER));
+        assertEquals("4.5", value("4.5", ConversionPlan.LeafType.INTEGER));
+        assertEquals("+", value("+", ConversionPlan.LeafType.INTEGER));
+
+        assertEquals(new BigDecimal("4.50"), value("4.50", ConversionPlan.LeafType.DECIMAL));
+        assertEquals(new BigDecimal("-1e3"), value("-1e3", ConversionPlan.LeafType.DECIMAL));
+        assertEquals("1e", value("1e", ConversionPlan.LeafType.DECIMAL));
+        assertEquals(".", value(".", ConversionPlan.LeafType.DECIMAL));
+
+        assertEquals(3L, value("3", ConversionPlan.LeafType.NUMBER));
+        assertEquals(new BigDecimal("3.0"), value("3.0", ConversionPlan.LeafType.NUMBER));
+        assertEquals("three", value("three", ConversionPlan.LeafType.NUMBER));
+
+        assertEquals(Boolean.TRUE, value("true", ConversionPlan.LeafType.BOOLEAN));
+        assertEquals(Boolean.FALSE, value(" 0 ", ConversionPlan.LeafType.BOOLEAN));
+        assertEquals("TRUE", value("TRUE", ConversionPlan.LeafType.BOOLEAN));
+
+        assertEquals("7", value(" 7 ", ConversionPlan.LeafType.STRING));
+        assertEquals("blank", value(" \t\n", ConversionPlan.LeafType.INTEGER));
+    }
+
+    @Test
+    void declaredLeavesAreTypedByBothEngines() throws Exception {
+        String xml = "<Response><ResultBlock><Count> 3 </Count><Ratio>0.25</Ratio><Flag>false</Flag>"
+                + "<Id>12</Id><Other><Id>x12</Id><Count>n/a</Count></Other>"
+                + "<MatchDetails><Match><Score>5</Score></Match><Match><Score>2</Score></Match></MatchDetails>"
+                + "</ResultBlock></Response>";
+        for (String engine : TestConverters.ENGINES) {
+            XmlToJsonConverter converter = TestConverters.create(engine, "leaf.type.Count=integer",
+                    "leaf.type.Ratio=decimal", "leaf.type.Flag=boolean", "leaf.type.ResultBlock/Id=integer",
+                    "leaf.type.Score=integer", "leaf.type.MatchSummary/TotalMatchScore=integer");
+            assertEquals("{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":7},"
+                            + "\"Count\":3,\"Ratio\":0.25,\"Flag\":false,\"Id\":12,"
+                            + "\"Other\":{\"Id\":\"x12\",\"Count\":\"n/a\"},"
+                            + "\"MatchDetails\":{\"MatchDetails\":[{\"Match\":{\"Score\":5}},{\"Match\":{\"Score\":2}}]}}}}",
+                    converter.convertXmlToJson(xml), engine);
+        }
+    }
+
+    @Test
+    void unknownLeafTypeIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> TestConverters.create("dom", "leaf.type.Count=float"));
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.converter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MatchScoreAggregatorTest {
+
+    private static String matches(String... scores) {
+        StringBuilder xml = new StringBuilder("<R><ResultBlock><Score>1000</Score><MatchDetails>");
+        for (String score : scores) {
+            xml.append("<Match><Score>").append(score).append("</Score></Match>");
+        }
+        return xml.append("</MatchDetails></ResultBlock></R>").toString();
+    }
+
+    /**
+     * MatchSummary object of the conversion, the same for both engines
+     */
+    private static String summary(String xml, String... settings) throws Exception {
+        String summary = null;
+        for (String engine : TestConverters.ENGINES) {
+            String json = TestConverters.create(engine, settings).convertXmlToJson(xml);
+            String engineSummary = json.substring(json.indexOf("\"MatchSummary\":"), json.indexOf('}') + 1);
+            if (summary != null) {
+                assertEquals(summary, engineSummary, engine);
+            }
+            summary = engineSummary;
+        }
+        return summary;
+    }
+
+    @Test
+    void onlyValidMatchScoresAreAggregated() throws Exception {
+        // The Score outside MatchDetails, the one over match.score.max and the non-numeric one are left out
+        assertEquals("\"MatchSummary\":{\"TotalMatchScore\":\"40\",\"MatchCount\":\"4\",\"MinMatchScore\":\"10\","
+                        + "\"MaxMatchScore\":\"30\",\"AverageMatchScore\":\"20\"}",
+                summary(matches("30", "150", "abc", "10"), "feature.match.summary.aggregates.enabled=true",
+                        "match.score.min=0", "match.score.max=100"));
+    }
+
+    @Test
+    void aggregatesAreOptional() throws Exception {
+        assertEquals("\"MatchSummary\":{\"TotalMatchScore\":\"3\"}", summary(matches("1", "2")));
+    }
+
+    @Test
+    void longTotalIsCappedAtTheConfiguredMaximum() throws Exception {
+        assertEquals("\"MatchSummary\":{\"TotalMatchScore\":\"100\"}", summary(matches("60", "60"),
+                "converter.score.data.type=long", "converter.max.long.value=100"));
+        assertEquals("\"MatchSummary\":{\"TotalMatchScore\":\"2147483647\"}",
+                summary(matches("2147483647", "1")));
+    }
+
+    @Test
+    void bigIntegerTotalIsExact() throws Exception {
+        assertEquals("\"MatchSummary\":{\"TotalMatchScore\":\"9223372036854775817\",\"MatchCount\":\"2\","
+                        + "\"MinMatchScore\":\"10\",\"MaxMatchScore\":\"9223372036854775807\","
+                        + "\"AverageMatchScore\":\"4611686018427387908.5\"}",
+                summary(matches("9223372036854775807", "10"), "converter.score.data.type=biginteger",
+                        "feature.match.summary.aggregates.enabled=true"));
+    }
+
+    @Test
+    void secondMatchScoreCanBeOverridden() throws Exception {
+        assertEquals("\"MatchSummary\":{\"TotalMatchScore\":\"45\"}",
+                summary(matches("1", "2", "4"), "fixed.second.match.score=40"));
+        // override.second.match.score takes precedence over the fixed value
+        assertEquals("\"MatchSummary\":{\"TotalMatchScore\":\"12\"}",
+                summary(matches("1", "2", "4"), "fixed.second.match.score=40", "override.second.match.score=7"));
+        assertEquals("\"MatchSummary\":{\"TotalMatchScore\":\"7\"}", summary(matches("1", "2", "4")));
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.converter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutputFormatTest {
+    private static final String XML = "<R a='1'><ResultBlock><MatchDetails><Match><Score>5</Score></Match>"
+            + "<Match><Score>7</Score></Match></MatchDetails><Values><Value>x</Value></Values></ResultBlock></R>";
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @Test
+    void jsonIsCompactUnlessPrettyPrinted() throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            String compact = TestConverters.create(engine).convertXmlToJson(XML);
+            String pretty = TestConverters.create(engine, "output.pretty=true").convertXmlToJson(XML);
+
+            assertFalse(compact.contains("\n") || compact.contains(" "), engine);
+            assertTrue(pretty.contains("\n"), engine);
+            assertEquals(JSON.readTree(compact), JSON.readTree(pretty), engine);
+        }
+    }
+
+    @Test
+    void binaryFormatsCarryTheSameDocument() throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            XmlToJsonConverter converter = TestConverters.create(engine);
+            JsonNode expected = JSON.readTree(converter.convertXmlToJson(XML));
+
+            byte[] smile = converter.convertXml(XML, OutputFormat.SMILE);
+            byte[] cbor = converter.convertXml(XML, OutputFormat.CBOR);
+            assertEquals(expected, new ObjectMapper(new SmileFactory()).readTree(smile), engine);
+            assertEquals(expected, new ObjectMapper(new CBORFactory()).readTree(cbor), engine);
+            assertTrue(smile.length < converter.convertXmlToJson(XML).length(), engine);
+        }
+    }
+
+    @Test
+    void configuredFormatAppliesToTheByteApis() throws Exception {
+        XmlToJsonConverter converter = TestConverters.create("streaming", "output.format=cbor");
+        assertSame(OutputFormat.CBOR, converter.getOutputFormat());
+        // The JSON text API stays JSON whatever output.format says
+        assertEquals(JSON.readTree(converter.convertXmlToJson(XML)),
+                new ObjectMapper(new CBORFactory()).readTree(converter.convertXml(XML, converter.getOutputFormat())));
+    }
+
+    @Test
+    void formatNamesAreParsed() {
+        assertSame(OutputFormat.SMILE, OutputFormat.of(" Smile "));
+        assertSame(OutputFormat.MESSAGEPACK, OutputFormat.of("msgpack"));
+        assertEquals("application/cbor", OutputFormat.CBOR.getContentType());
+        assertTrue(OutputFormat.CBOR.isBinary());
+        assertFalse(OutputFormat.JSON.isBinary());
+        assertThrows(IllegalArgumentException.class, () -> OutputFormat.of("xml"));
+    }
+
+    @Test
+    void messagePackNeedsItsOptionalDependency() {
+        Exception e = assertThrows(Exception.class,
+                () -> TestConverters.create("streaming").convertXml(XML, OutputFormat.MESSAGEPACK));
+        assertTrue(e.getMessage().contains("jackson-dataformat-msgpack"), e.getMessage());
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.converter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProjectionTest {
+    private static final String XML = "<Response><API><RetStatus>0</RetStatus></API><ResultBlock><A>1</A><B>2</B>"
+            + "<MatchDetails><Match><Score>30</Score></Match><Match><Score>20</Score></Match></MatchDetails>"
+            + "</ResultBlock></Response>";
+
+    private static void assertProjects(String expectedJson, String... settings) throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            assertEquals(expectedJson, TestConverters.create(engine, settings).convertXmlToJson(XML), engine);
+        }
+    }
+
+    @Test
+    void includeKeepsAncestorsAsContainers() throws Exception {
+        assertProjects("{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"50\"},\"A\":\"1\"}}}",
+                "projection.include=ResultBlock/A");
+    }
+
+    @Test
+    void excludedMatchesStillCountTowardsTheSummary() throws Exception {
+        assertProjects("{\"Response\":{\"API\":{\"RetStatus\":\"0\"},"
+                        + "\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"50\"},\"A\":\"1\",\"B\":\"2\"}}}",
+                "projection.exclude=ResultBlock/MatchDetails");
+    }
+
+    @Test
+    void absolutePathsAndWildcards() throws Exception {
+        assertProjects("{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"50\"},\"A\":\"1\"}}}",
+                "projection.exclude=/Response/API,*/B,ResultBlock/MatchDetails");
+    }
+
+    @Test
+    void excludeWinsOverInclude() throws Exception {
+        assertProjects("{\"Response\":{\"API\":{\"RetStatus\":\"0\"}}}",
+                "projection.include=API,ResultBlock", "projection.exclude=ResultBlock");
+    }
+
+    @Test
+    void projectionPerCallReplacesTheConfiguredOne() throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            XmlToJsonConverter converter = TestConverters.create(engine, "projection.include=API");
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            converter.convertXml(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)),
+                    null, json, OutputFormat.JSON, Projection.parse("ResultBlock/B", null));
+            assertEquals("{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"50\"},\"B\":\"2\"}}}",
+                    json.toString(StandardCharsets.UTF_8), engine);
+        }
+    }
+
+    @Test
+    void invalidPathIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Projection.parse("ResultBlock//A", null));
+    }
+}
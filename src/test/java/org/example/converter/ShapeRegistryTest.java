@@ -0,0 +1,84 @@
+package org.example.converter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShapeRegistryTest {
+    private static final String REPEATED = "<Response><ResultBlock><A>1</A><A>2</A><B>x</B></ResultBlock></Response>";
+    private static final String SINGLE = "<Response><ResultBlock><A>1</A><B>x</B></ResultBlock></Response>";
+    private static final String GROUPED = "<Response><ResultBlock><MatchDetails><Match><Score>5</Score></Match>"
+            + "<Group><Match><Score>10</Score></Match></Group><Match><Score>2</Score></Match>"
+            + "</MatchDetails></ResultBlock></Response>";
+
+    @Test
+    void declaredArrayPathIsAnArrayWithOneItem() throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            XmlToJsonConverter converter = TestConverters.create(engine, "shape.array.paths=Response/ResultBlock/A");
+            assertEquals("{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},"
+                    + "\"A\":[\"1\"],\"B\":\"x\"}}}", converter.convertXmlToJson(SINGLE), engine);
+        }
+    }
+
+    @Test
+    void learnedRepeatingPathStaysAnArray() throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            XmlToJsonConverter converter = TestConverters.create(engine, "shape.learn.documents=1");
+            ShapeRegistry shapes = converter.getShapeRegistry();
+            assertFalse(shapes.isLearningComplete(), engine);
+
+            converter.convertXmlToJson(REPEATED);
+            assertTrue(shapes.isLearningComplete(), engine);
+            assertEquals(Set.of("Response/ResultBlock/A"), shapes.getArrayPaths(), engine);
+            assertEquals("{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},"
+                    + "\"A\":[\"1\"],\"B\":\"x\"}}}", converter.convertXmlToJson(SINGLE), engine);
+        }
+    }
+
+    @Test
+    void matchesBelowOtherElementsAreNeverLearnedAway() throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            XmlToJsonConverter converter = TestConverters.create(engine, "shape.learn.documents=1");
+            converter.convertXmlToJson("<Response><ResultBlock><MatchDetails><Match><Score>5</Score></Match>"
+                    + "<Match><Score>2</Score></Match></MatchDetails></ResultBlock></Response>");
+            assertTrue(converter.convertXmlToJson(GROUPED).contains("\"TotalMatchScore\":\"17\""), engine);
+        }
+    }
+
+    @Test
+    void declaredDirectPathOnlyCollectsChildren() throws Exception {
+        for (String engine : TestConverters.ENGINES) {
+            XmlToJsonConverter converter = TestConverters.create(engine,
+                    "shape.direct.paths=Response/ResultBlock/MatchDetails");
+            assertEquals("{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"7\"},"
+                            + "\"MatchDetails\":{\"MatchDetails\":[{\"Match\":{\"Score\":\"5\"}},{\"Match\":{\"Score\":\"2\"}}]}}}}",
+                    converter.convertXmlToJson(GROUPED), engine);
+        }
+    }
+
+    @Test
+    void enginesLearnTheSamePathsFromActualRepeats() throws Exception {
+        // Match and Value lists, and arrays declared by rule, are arrays without their element repeating
+        String[] documents = {
+                GROUPED,
+                "<Response><ResultBlock><MatchDetails><Match><Score>1</Score></Match></MatchDetails>"
+                        + "<Values><Value>a</Value><Value>b</Value></Values><C>1</C>"
+                        + "<B><D>1</D></B><B><D>2</D><D>3</D></B></ResultBlock></Response>",
+                "<Response><ResultBlock><X/></ResultBlock><ResultBlock><X/></ResultBlock></Response>"
+        };
+        Set<String> expected = Set.of("Response/ResultBlock", "Response/ResultBlock/B",
+                "Response/ResultBlock/B/D");
+        for (String engine : TestConverters.ENGINES) {
+            XmlToJsonConverter converter = TestConverters.create(engine, "shape.learn.documents=3",
+                    "element.rule.C=array");
+            for (String document : documents) {
+                converter.convertXmlToJson(document);
+            }
+            assertEquals(expected, converter.getShapeRegistry().getArrayPaths(), engine);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.converter;
+
+import java.util.Properties;
+
+/**
+ * Converters for the tests, configured with key=value settings on top of the defaults
+ */
+final class TestConverters {
+    static final String[] ENGINES = {"dom", "streaming"};
+
+    private TestConverters() {
+    }
+
+    static Properties config(String engine, String... settings) {
+        Properties config = new Properties();
+        config.setProperty("converter.engine", engine);
+        // No JMX registration for the many short-lived converters of the tests
+        config.setProperty("metrics.enabled", "false");
+        for (String setting : settings) {
+            int equals = setting.indexOf('=');
+            config.setProperty(setting.substring(0, equals), setting.substring(equals + 1));
+        }
+        return config;
+    }
+
+    static XmlToJsonConverter create(String engine, String... settings) {
+        return new XmlToJsonConverter(config(engine, settings));
+    }
+
+    /**
+     * Document nested {@code depth} elements deep below Response/ResultBlock, with a text leaf at the bottom
+     */
+    static String deep(int depth) {
+        StringBuilder xml = new StringBuilder("<Response><ResultBlock>");
+        for (int i = 0; i < depth; i++) {
+            xml.append("<Level>");
+        }
+        xml.append("x");
+        for (int i = 0; i < depth; i++) {
+            xml.append("</Level>");
+        }
+        return xml.append("</ResultBlock></Response>").toString();
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.metrics;
+
+import org.example.converter.XmlToJsonConverter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramMetricsTest {
+    private static final String[] ENGINES = {"dom", "streaming"};
+    private static final String XML = "<Response><ResultBlock><MatchDetails><Match><Score>5</Score></Match>"
+            + "<Match><Score>2</Score></Match></MatchDetails></ResultBlock></Response>";
+
+    private static XmlToJsonConverter converter(String engine, ConversionMetrics metrics, String... settings) {
+        Properties config = new Properties();
+        config.setProperty("converter.engine", engine);
+        for (String setting : settings) {
+            int equals = setting.indexOf('=');
+            config.setProperty(setting.substring(0, equals), setting.substring(equals + 1));
+        }
+        return new XmlToJsonConverter(config, metrics);
+    }
+
+    @Test
+    void conversionRecordsPhasesSizesAndCounts() throws Exception {
+        for (String engine : ENGINES) {
+            HistogramMetrics metrics = new HistogramMetrics();
+            String json = converter(engine, metrics).convertXmlToJson(XML);
+
+            assertEquals(1, metrics.getConversionCount(), engine);
+            assertEquals(0, metrics.getErrorCount(), engine);
+            assertEquals(XML.length(), metrics.getInputSizeTotal(), engine);
+            assertEquals(json.length(), metrics.getOutputSizeTotal(), engine);
+            assertEquals(7, metrics.getElementCount(), engine);
+            assertEquals(2, metrics.getMatchCount(), engine);
+
+            // Only the DOM engine has separate parse and summary phases
+            long domOnly = engine.equals("dom") ? 1 : 0;
+            assertEquals(domOnly, metrics.getLatency(ConversionMetrics.Phase.PARSE).getCount(), engine);
+            assertEquals(domOnly, metrics.getLatency(ConversionMetrics.Phase.SUMMARY).getCount(), engine);
+            assertEquals(1, metrics.getLatency(ConversionMetrics.Phase.CONVERT).getCount(), engine);
+            assertEquals(1, metrics.getLatency(ConversionMetrics.Phase.SERIALIZE).getCount(), engine);
+            assertEquals(1, metrics.getLatency(ConversionMetrics.Phase.TOTAL).getCount(), engine);
+            assertEquals(1L, metrics.getLatencyMicros().get("total.count"), engine);
+            assertEquals(1L, metrics.getInputSizes().get("input.count"), engine);
+        }
+    }
+
+    @Test
+    void errorsAreCountedByRootCause() throws Exception {
+        for (String engine : ENGINES) {
+            HistogramMetrics metrics = new HistogramMetrics();
+            XmlToJsonConverter converter = converter(engine, metrics, "limits.max.depth=3");
+            assertThrows(XmlToJsonConverter.LimitExceededException.class, () -> converter.convertXmlToJson(XML));
+            assertThrows(XmlToJsonConverter.LimitExceededException.class, () -> converter.convertXmlToJson(XML));
+            converter.convertXmlToJson("<Response><A>1</A></Response>");
+
+            assertEquals(1, metrics.getConversionCount(), engine);
+            assertEquals(2, metrics.getErrorCount(), engine);
+            assertEquals(Map.of("LimitExceededException", 2L), metrics.getErrorsByCause(), engine);
+        }
+    }
+
+    @Test
+    void resetDropsEverythingRecorded() throws Exception {
+        HistogramMetrics metrics = new HistogramMetrics();
+        converter("dom", metrics).convertXmlToJson(XML);
+        metrics.reset();
+
+        assertEquals(0, metrics.getConversionCount());
+        assertEquals(0, metrics.getInputSizeTotal());
+        assertEquals(0, metrics.getLatency(ConversionMetrics.Phase.TOTAL).getCount());
+        assertTrue(metrics.getErrorsByCause().isEmpty());
+    }
+
+    @Test
+    void histogramReportsPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p50 >= 5_000_000 && p50 <= 5_000_000 * 1.04, "p50 " + p50);
+        assertTrue(p99 >= 9_900_000 && p99 <= 9_900_000 * 1.04, "p99 " + p99);
+    }
+
+    @Test
+    void customImplementationReceivesTheHooksOnlyWhenEnabled() throws Exception {
+        for (String engine : ENGINES) {
+            RecordingMetrics enabled = new RecordingMetrics(true);
+            converter(engine, enabled).convertXmlToJson(XML);
+            assertTrue(enabled.calls.contains("phase TOTAL"), engine);
+            assertTrue(enabled.calls.contains("counts 7 2"), engine);
+            assertTrue(enabled.calls.contains("sizes " + XML.length()), engine);
+
+            RecordingMetrics disabled = new RecordingMetrics(false);
+            converter(engine, disabled).convertXmlToJson(XML);
+            assertEquals(List.of(), disabled.calls, engine);
+        }
+    }
+
+    private static final class RecordingMetrics implements ConversionMetrics {
+        final List<String> calls = new ArrayList<>();
+        private final boolean enabled;
+
+        RecordingMetrics(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public synchronized void recordPhase(Phase phase, long nanos) {
+            calls.add("phase " + phase);
+        }
+
+        @Override
+        public synchronized void recordSizes(long inputSize, long outputSize) {
+            calls.add("sizes " + inputSize);
+        }
+
+        @Override
+        public synchronized void recordCounts(long elements, long matches) {
+            calls.add("counts " + elements + " " + matches);
+        }
+
+        @Override
+        public synchronized void recordError(Throwable error) {
+            calls.add("error " + error.getClass().getSimpleName());
+        }
+    }
+}
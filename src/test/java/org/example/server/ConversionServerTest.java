@@ -0,0 +1,138 @@
+package org.example.server;
+
+import org.example.converter.XmlToJsonConverter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionServerTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ConversionServer server;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private void start(String... settings) throws IOException {
+        Properties config = new Properties();
+        config.setProperty("metrics.enabled", "false");
+        for (String setting : settings) {
+            int equals = setting.indexOf('=');
+            config.setProperty(setting.substring(0, equals), setting.substring(equals + 1));
+        }
+        server = new ConversionServer(new XmlToJsonConverter(ConversionServer.serverConfig(config)), 0);
+        server.start();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/convert"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Connection that has sent the headers of a conversion request but only part of its body
+     */
+    private Socket stalledConversion(long contentLength) throws IOException {
+        Socket socket = new Socket("localhost", server.getPort());
+        OutputStream out = socket.getOutputStream();
+        out.write(("POST /convert HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + contentLength
+                + "\r\n\r\n<R>").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return socket;
+    }
+
+    /**
+     * Status line and headers of the response on the connection
+     */
+    private static List<String> responseHead(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        List<String> lines = new ArrayList<>();
+        for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+            lines.add(line.toLowerCase());
+        }
+        return lines;
+    }
+
+    @Test
+    void convertsPostedXml() throws Exception {
+        start();
+        HttpResponse<String> response = post("<R><ResultBlock><A>1</A></ResultBlock></R>");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},\"A\":\"1\"}}}",
+                response.body());
+        assertTrue(response.headers().firstValue("X-Correlation-Id").isPresent());
+        assertEquals(405, get("/convert").statusCode());
+    }
+
+    @Test
+    void saturatedServerRejectsConversionsButAnswersHealthAndMetrics() throws Exception {
+        start("server.threads=1", "server.max.concurrent=1");
+        try (Socket running = stalledConversion(1000)) {
+            // The rejected request never sends its body, the 429 must not wait for it
+            try (Socket rejected = stalledConversion(1_000_000)) {
+                rejected.setSoTimeout(5000);
+                List<String> head = responseHead(rejected);
+                assertTrue(head.get(0).startsWith("http/1.1 429"), head.get(0));
+                assertTrue(head.contains("retry-after: 1"), head.toString());
+                assertTrue(head.contains("connection: close"), head.toString());
+                assertEquals(-1, rejected.getInputStream().read());
+            }
+
+            assertEquals(200, get("/health").statusCode());
+            HttpResponse<String> metrics = get("/metrics");
+            assertEquals(200, metrics.statusCode());
+            assertTrue(metrics.body().contains("\"rejected\":1"), metrics.body());
+        }
+    }
+
+    @Test
+    void oversizedRequestsAreRejected() throws Exception {
+        start("server.max.request.bytes=100");
+        try (Socket socket = stalledConversion(101)) {
+            socket.setSoTimeout(5000);
+            assertTrue(responseHead(socket).get(0).startsWith("http/1.1 413"));
+        }
+        // Without a declared length the body is cut off while it is read
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/convert"))
+                        .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(
+                                ("<R>" + "<a>1</a>".repeat(100) + "</R>").getBytes(StandardCharsets.UTF_8))))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(413, response.statusCode());
+    }
+
+    @Test
+    void serverLimitsApplyToServerConversions() throws Exception {
+        start("limits.max.depth=0", "server.limits.max.depth=3");
+        assertEquals(200, post("<R><ResultBlock><A>1</A></ResultBlock></R>").statusCode());
+        assertEquals(413, post("<R><ResultBlock><A><B>1</B></A></ResultBlock></R>").statusCode());
+        assertEquals(400, post("<R><unclosed></R>").statusCode());
+    }
+}
@@ -0,0 +1,84 @@
+package org.example.service;
+
+import org.example.converter.OutputFormat;
+import org.example.converter.XmlToJsonConverter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConversionCacheTest {
+    private static final String XML = "<R><ResultBlock><A>1</A></ResultBlock></R>";
+
+    private static XmlToJsonService service(String... settings) {
+        Properties config = new Properties();
+        config.setProperty("metrics.enabled", "false");
+        config.setProperty("cache.enabled", "true");
+        for (String setting : settings) {
+            int equals = setting.indexOf('=');
+            config.setProperty(setting.substring(0, equals), setting.substring(equals + 1));
+        }
+        return new XmlToJsonService(new XmlToJsonConverter(config));
+    }
+
+    @Test
+    void keysCompareTheInputFormatAndConfiguration() {
+        ConversionCache cache = new ConversionCache(1 << 20, 0, 4);
+
+        assertEquals(cache.key(XML, "a", null), cache.key(new String(XML), "a", null));
+        assertNotEquals(cache.key(XML, "a", null), cache.key(XML.replace('1', '2'), "a", null));
+        // Equal length and one swapped pair of characters
+        assertNotEquals(cache.key("<a>12</a>", "a", null), cache.key("<a>21</a>", "a", null));
+        assertNotEquals(cache.key(XML, "a", null), cache.key(XML, "a", OutputFormat.JSON));
+        assertNotEquals(cache.key(XML, "a", OutputFormat.JSON), cache.key(XML, "a", OutputFormat.CBOR));
+        assertNotEquals(cache.key(XML, "a", null), cache.key(XML, "b", null));
+    }
+
+    @Test
+    void repeatedInputsAreAnsweredFromTheCache() {
+        try (XmlToJsonService service = service()) {
+            ConversionCache cache = service.getCache();
+            String first = service.processXml(XML);
+
+            assertEquals(first, service.processXml(XML));
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+
+            service.processXml(XML.replace('1', '2'));
+            assertEquals(2, cache.getMissCount());
+        }
+    }
+
+    @Test
+    void formatsAreCachedApart() {
+        try (XmlToJsonService service = service()) {
+            ConversionCache cache = service.getCache();
+            String json = service.processXml(XML);
+            byte[] cbor = service.processXml(XML, OutputFormat.CBOR);
+
+            assertEquals(0, cache.getHitCount());
+            assertNotEquals(json, new String(cbor, StandardCharsets.UTF_8));
+            // The returned arrays are copies, so a caller modifying one does not touch the cache
+            cbor[0] ^= 1;
+            assertEquals(cbor[0] ^ 1, service.processXml(XML, OutputFormat.CBOR)[0]);
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void entriesOverTheBudgetAreEvicted() {
+        ConversionCache cache = new ConversionCache(64, 0, 1);
+        ConversionCache.Key first = cache.key("<a>1</a>", "a", null);
+        ConversionCache.Key second = cache.key("<a>2</a>", "a", null);
+        cache.put(first, "0123456789012345678901234");
+        cache.put(second, "0123456789012345678901234");
+
+        assertNull(cache.get(first));
+        assertEquals("0123456789012345678901234", cache.get(second));
+        assertEquals(1, cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.service;
+
+import org.example.converter.XmlToJsonConverter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NdjsonFileConversionTest {
+    @TempDir
+    Path directory;
+
+    private static XmlToJsonService service(String... settings) {
+        Properties config = new Properties();
+        config.setProperty("metrics.enabled", "false");
+        for (String setting : settings) {
+            int equals = setting.indexOf('=');
+            config.setProperty(setting.substring(0, equals), setting.substring(equals + 1));
+        }
+        return new XmlToJsonService(new XmlToJsonConverter(config));
+    }
+
+    private List<String> convert(XmlToJsonService service, String xml, String recordElement) throws Exception {
+        Path input = directory.resolve("input.xml");
+        Path output = directory.resolve("output.ndjson");
+        Files.writeString(input, xml);
+        long written = service.processFileToNdjson(input, output, recordElement);
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(written, lines.size());
+        return lines;
+    }
+
+    @Test
+    void prefixedRecordsConvertLikeStandaloneDocuments() throws Exception {
+        try (XmlToJsonService service = service()) {
+            List<String> lines = convert(service, "<Bulk xmlns:x='u'>"
+                    + "<x:Response x:id='1'><ResultBlock><x:A>1</x:A></ResultBlock></x:Response>"
+                    + "<Response><ResultBlock><y:B>2</y:B></ResultBlock></Response></Bulk>", "Response");
+
+            assertEquals(List.of(
+                    "{\"x:Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},\"x:A\":\"1\"},"
+                            + "\"x:id\":\"1\"}}",
+                    "{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},\"y:B\":\"2\"}}}"),
+                    lines);
+        }
+    }
+
+    private static String record(int i) {
+        return "<Response><ResultBlock><Id>" + i + "</Id><MatchDetails><Match><Score>" + i % 10
+                + "</Score></Match></MatchDetails></ResultBlock></Response>";
+    }
+
+    private static String recordJson(int i) {
+        return "{\"Response\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"" + i % 10 + "\"},"
+                + "\"Id\":\"" + i + "\",\"MatchDetails\":{\"MatchDetails\":[{\"Match\":{\"Score\":\"" + i % 10
+                + "\"}}]}}}}";
+    }
+
+    @Test
+    void recordsAreWrittenInOrderEachWithItsSummary() throws Exception {
+        StringBuilder xml = new StringBuilder("<Bulk><Header><Response><Note>header</Note></Response></Header>");
+        List<String> expected = new ArrayList<>();
+        // Records nested anywhere count, and there are far more of them than the window holds
+        for (int i = 0; i < 500; i++) {
+            xml.append(record(i));
+            expected.add(recordJson(i));
+        }
+        xml.append("</Bulk>");
+        expected.add(0, "{\"Response\":{\"Note\":\"header\"}}");
+        try (XmlToJsonService service = service("bulk.window=8", "batch.executor=forkjoin",
+                "batch.parallelism=4")) {
+            assertEquals(expected, convert(service, xml.toString(), "Response"));
+        }
+    }
+
+    @Test
+    void failedRecordsAbortStrictRunsAndAreSkippedOtherwise() throws Exception {
+        String xml = "<Bulk>" + record(1) + "<Response><A><B><C><D><E>deep</E></D></C></B></A></Response>" + record(2) + "</Bulk>";
+        try (XmlToJsonService service = service("limits.max.depth=5")) {
+            RuntimeException e = assertThrows(RuntimeException.class, () -> convert(service, xml, "Response"));
+            assertInstanceOf(XmlToJsonConverter.LimitExceededException.class, e.getCause().getCause());
+        }
+        try (XmlToJsonService service = service("limits.max.depth=5", "feature.error.handling.strict=false")) {
+            assertEquals(List.of(recordJson(1), recordJson(2)), convert(service, xml, "Response"));
+        }
+    }
+}
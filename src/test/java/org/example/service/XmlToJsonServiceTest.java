@@ -0,0 +1,177 @@
+package org.example.service;
+
+import org.example.converter.XmlToJsonConverter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XmlToJsonServiceTest {
+    private static final String XML = "<R><ResultBlock><Name>Zoë</Name></ResultBlock></R>";
+    private static final String JSON = "{\"R\":{\"ResultBlock\":{\"MatchSummary\":{\"TotalMatchScore\":\"0\"},"
+            + "\"Name\":\"Zoë\"}}}";
+
+    private static Properties config(String... settings) {
+        Properties config = new Properties();
+        config.setProperty("metrics.enabled", "false");
+        for (String setting : settings) {
+            int equals = setting.indexOf('=');
+            config.setProperty(setting.substring(0, equals), setting.substring(equals + 1));
+        }
+        return config;
+    }
+
+    private static XmlToJsonService service(String... settings) {
+        return new XmlToJsonService(new XmlToJsonConverter(config(settings)));
+    }
+
+    @Test
+    void streamsConvertBytesToUtf8Json() {
+        try (XmlToJsonService service = service()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            service.processXml(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)), output);
+
+            assertEquals(JSON, output.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void inputEncodingIsDeclaredOrDetected() {
+        try (XmlToJsonService service = service()) {
+            String declared = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" + XML;
+            ByteArrayOutputStream detected = new ByteArrayOutputStream();
+            service.processXml(new ByteArrayInputStream(declared.getBytes(StandardCharsets.ISO_8859_1)), detected);
+            assertEquals(JSON, detected.toString(StandardCharsets.UTF_8));
+
+            ByteArrayOutputStream given = new ByteArrayOutputStream();
+            service.processXml(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_16)), "UTF-16", given);
+            assertEquals(JSON, given.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void channelsAndBuffersConvertLikeStreams() {
+        try (XmlToJsonService service = service()) {
+            ByteArrayOutputStream fromChannel = new ByteArrayOutputStream();
+            service.processXml(Channels.newChannel(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8))),
+                    Channels.newChannel(fromChannel));
+            assertEquals(JSON, fromChannel.toString(StandardCharsets.UTF_8));
+
+            // A direct buffer with the document in the middle, its position is left as it was
+            byte[] bytes = XML.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 8);
+            buffer.position(4);
+            buffer.put(bytes);
+            buffer.position(4).limit(4 + bytes.length);
+            ByteArrayOutputStream fromBuffer = new ByteArrayOutputStream();
+            service.processXml(buffer, fromBuffer);
+            assertEquals(JSON, fromBuffer.toString(StandardCharsets.UTF_8));
+            assertEquals(4, buffer.position());
+
+            ByteArrayOutputStream toChannel = new ByteArrayOutputStream();
+            service.processXml(ByteBuffer.wrap(bytes), Channels.newChannel(toChannel));
+            assertEquals(JSON, toChannel.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void streamFailuresAreReportedUnchecked() {
+        try (XmlToJsonService service = service()) {
+            assertThrows(RuntimeException.class, () -> service.processXml(
+                    new ByteArrayInputStream("<R><unclosed></R>".getBytes(StandardCharsets.UTF_8)),
+                    new ByteArrayOutputStream()));
+        }
+    }
+
+    private static String document(int i) {
+        return "<R><ResultBlock><N>" + i + "</N></ResultBlock></R>";
+    }
+
+    @Test
+    void batchResultsAreInInputOrderWithFailuresCaptured() {
+        try (XmlToJsonService service = service("batch.parallelism=4", "batch.executor=forkjoin")) {
+            List<String> inputs = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                inputs.add(i == 7 ? "<R><unclosed></R>" : document(i));
+            }
+            List<ConversionResult> results = service.processAll(inputs);
+
+            assertEquals(20, results.size());
+            for (int i = 0; i < 20; i++) {
+                ConversionResult result = results.get(i);
+                assertEquals(i, result.getIndex());
+                if (i == 7) {
+                    assertFalse(result.isSuccess());
+                    assertTrue(result.getError() instanceof XmlToJsonConverter.XmlToJsonConverterException,
+                            String.valueOf(result.getError()));
+                } else {
+                    assertEquals(service.processXml(document(i)), result.getJson());
+                }
+            }
+        }
+    }
+
+    @Test
+    void unorderedBatchDeliversEveryResult() {
+        try (XmlToJsonService service = service("batch.parallelism=4", "batch.executor=forkjoin")) {
+            List<ConversionResult> results = service.processAll(IntStream.range(0, 50)
+                    .mapToObj(XmlToJsonServiceTest::document), false);
+
+            Set<Integer> indexes = results.stream().map(ConversionResult::getIndex).collect(Collectors.toSet());
+            assertEquals(IntStream.range(0, 50).boxed().collect(Collectors.toCollection(TreeSet::new)), indexes);
+            assertTrue(results.stream().allMatch(ConversionResult::isSuccess));
+        }
+    }
+
+    @Test
+    void batchPullsInputsOnlyWhileFewerThanMaxInFlightArePending() {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        AtomicInteger pulled = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger maxPending = new AtomicInteger();
+        try (XmlToJsonService service = new XmlToJsonService(
+                new XmlToJsonConverter(config("batch.max.in.flight=3")), pool)) {
+            for (boolean ordered : new boolean[] {true, false}) {
+                Stream<String> inputs = IntStream.range(0, 100).mapToObj(i -> {
+                    maxPending.accumulateAndGet(pulled.incrementAndGet() - delivered.get(), Math::max);
+                    return document(i);
+                });
+                service.processAll(inputs, ordered, result -> delivered.incrementAndGet());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(200, delivered.get());
+        // Three pending conversions, and the one input the stream's iterator fetches ahead in hasNext
+        assertTrue(maxPending.get() <= 4, "pending " + maxPending.get());
+    }
+
+    @Test
+    void asyncConversionCompletesOnTheExecutor() throws Exception {
+        try (XmlToJsonService service = service()) {
+            assertEquals(JSON, service.processAsync(XML).get());
+            assertThrows(ExecutionException.class,
+                    () -> service.processAsync("<R><unclosed></R>").get());
+        }
+    }
+}